@@ -0,0 +1,322 @@
+import java.util.*;
+
+// basic blocks of one function's lowered code, with dominators and natural
+// loops; branches, jumps and labels come straight from the if/while/return
+// lowering, so the graph follows the statement structure of the source
+public class Cfg {
+    public static class Block {
+        final int id;
+        final List<Instr> code = new ArrayList<Instr>();
+        final List<Block> succs = new ArrayList<Block>();
+        final List<Block> preds = new ArrayList<Block>();
+        Block taken = null;
+        Block next = null;
+        Block idom = null;
+        int order = -1;
+        int loopDepth = 0;
+
+        Block(int id) {
+            this.id = id;
+        }
+
+        public String name() {
+            return "B" + id;
+        }
+
+        public boolean hasCode() {
+            return last() != null;
+        }
+
+        public Instr last() {
+            for (int k = code.size() - 1; k >= 0; k--) {
+                if (code.get(k).isCode()) {
+                    return code.get(k);
+                }
+            }
+            return null;
+        }
+
+        public boolean reachable() {
+            return order >= 0;
+        }
+
+        private void link(Block succ) {
+            if (!succs.contains(succ)) {
+                succs.add(succ);
+                succ.preds.add(this);
+            }
+        }
+    }
+
+    public static class Loop {
+        final Block header;
+        final Set<Block> body = new LinkedHashSet<Block>();
+
+        Loop(Block header) {
+            this.header = header;
+            body.add(header);
+        }
+    }
+
+    private final String function;
+    private final List<Block> blocks = new ArrayList<Block>();
+    private final List<Block> rpo = new ArrayList<Block>();
+    private final List<Loop> loops = new ArrayList<Loop>();
+
+    private Cfg(String function) {
+        this.function = function;
+    }
+
+    public static Cfg build(String function, List<Instr> code) {
+        Cfg cfg = new Cfg(function);
+        cfg.split(code);
+        cfg.link();
+        cfg.order(cfg.entry());
+        Collections.reverse(cfg.rpo);
+        for (int k = 0; k < cfg.rpo.size(); k++) {
+            cfg.rpo.get(k).order = k;
+        }
+        cfg.dominators();
+        cfg.findLoops();
+        return cfg;
+    }
+
+    public String function() {
+        return function;
+    }
+
+    public Block entry() {
+        return blocks.get(0);
+    }
+
+    public List<Block> blocks() {
+        return blocks;
+    }
+
+    public List<Block> reversePostorder() {
+        return rpo;
+    }
+
+    public List<Loop> loops() {
+        return loops;
+    }
+
+    // a label starts a block unless the block has no code yet; a branch or
+    // jump ends one
+    private void split(List<Instr> code) {
+        Block b = new Block(0);
+        blocks.add(b);
+        boolean ended = false;
+        for (Instr i : code) {
+            if (ended || (i.op == Opcode.LABEL && b.hasCode())) {
+                b = new Block(blocks.size());
+                blocks.add(b);
+                ended = false;
+            }
+            b.code.add(i);
+            ended = i.op.isBranch() || i.op.isJump();
+        }
+    }
+
+    private void link() {
+        Map<String, Block> labels = new HashMap<String, Block>();
+        for (Block b : blocks) {
+            for (Instr i : b.code) {
+                if (i.op == Opcode.LABEL) {
+                    labels.put(i.label, b);
+                }
+            }
+        }
+        for (int k = 0; k < blocks.size(); k++) {
+            Block b = blocks.get(k);
+            Instr last = b.last();
+            Block next = k + 1 < blocks.size() ? blocks.get(k + 1) : null;
+            if (last != null && (last.op.isBranch() || last.op == Opcode.J)) {
+                // a jump to a label outside the function is a tail call
+                Operand target = last.args[last.args.length - 1];
+                Block to = target instanceof LabelRef ? labels.get(((LabelRef) target).name()) : null;
+                if (to != null) {
+                    b.taken = to;
+                    b.link(to);
+                }
+            }
+            if (next != null && (last == null || !last.op.isJump())) {
+                b.next = next;
+                b.link(next);
+            }
+        }
+    }
+
+    private void order(Block b) {
+        b.order = 0;
+        for (Block s : b.succs) {
+            if (s.order < 0) {
+                order(s);
+            }
+        }
+        rpo.add(b);
+    }
+
+    // Cooper, Harvey and Kennedy's iterative algorithm over reverse postorder
+    private void dominators() {
+        Block entry = entry();
+        entry.idom = entry;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int k = 1; k < rpo.size(); k++) {
+                Block b = rpo.get(k);
+                Block idom = null;
+                for (Block p : b.preds) {
+                    if (p.idom != null) {
+                        idom = idom == null ? p : intersect(p, idom);
+                    }
+                }
+                if (idom != b.idom) {
+                    b.idom = idom;
+                    changed = true;
+                }
+            }
+        }
+        entry.idom = null;
+    }
+
+    private static Block intersect(Block a, Block b) {
+        while (a != b) {
+            while (a.order > b.order) {
+                a = a.idom;
+            }
+            while (b.order > a.order) {
+                b = b.idom;
+            }
+        }
+        return a;
+    }
+
+    public boolean dominates(Block a, Block b) {
+        if (!a.reachable() || !b.reachable()) {
+            return false;
+        }
+        while (b != a && b.idom != null) {
+            b = b.idom;
+        }
+        return b == a;
+    }
+
+    public List<Block> children(Block b) {
+        List<Block> kids = new ArrayList<Block>();
+        for (Block x : rpo) {
+            if (x.idom == b) {
+                kids.add(x);
+            }
+        }
+        return kids;
+    }
+
+    // for each join point, walk up from every predecessor to the join's
+    // immediate dominator
+    public Map<Block, Set<Block>> frontiers() {
+        Map<Block, Set<Block>> df = new HashMap<Block, Set<Block>>();
+        for (Block b : rpo) {
+            df.put(b, new LinkedHashSet<Block>());
+        }
+        for (Block b : rpo) {
+            if (b.preds.size() < 2) {
+                continue;
+            }
+            for (Block p : b.preds) {
+                for (Block x = p; x != null && x.reachable() && x != b.idom; x = x.idom) {
+                    df.get(x).add(b);
+                }
+            }
+        }
+        return df;
+    }
+
+    public boolean isBackEdge(Block from, Block to) {
+        return dominates(to, from);
+    }
+
+    // each back edge into a header adds the blocks that reach its source
+    // without passing the header; loops sharing a header are merged
+    private void findLoops() {
+        Map<Block, Loop> byHeader = new LinkedHashMap<Block, Loop>();
+        for (Block b : rpo) {
+            for (Block h : b.succs) {
+                if (!isBackEdge(b, h)) {
+                    continue;
+                }
+                Loop loop = byHeader.get(h);
+                if (loop == null) {
+                    loop = new Loop(h);
+                    byHeader.put(h, loop);
+                }
+                Deque<Block> work = new ArrayDeque<Block>();
+                work.push(b);
+                while (!work.isEmpty()) {
+                    Block x = work.pop();
+                    if (x.reachable() && loop.body.add(x)) {
+                        for (Block p : x.preds) {
+                            work.push(p);
+                        }
+                    }
+                }
+            }
+        }
+        loops.addAll(byHeader.values());
+        for (Loop loop : loops) {
+            for (Block b : loop.body) {
+                b.loopDepth++;
+            }
+        }
+    }
+
+    // one cluster per function; blocks list their code, back edges are
+    // dashed
+    public void toDot(StringBuilder sb) {
+        sb.append("  subgraph \"cluster_").append(function).append("\" {\n");
+        sb.append("    label=\"").append(function).append("\";\n");
+        for (Block b : blocks) {
+            sb.append("    ").append(node(b)).append(" [shape=box, label=\"").append(b.name());
+            for (Instr i : b.code) {
+                if (i.op == Opcode.LABEL) {
+                    sb.append(' ').append(escape(i.label));
+                }
+            }
+            if (!b.reachable()) {
+                sb.append(" (unreachable)");
+            }
+            if (b.idom != null) {
+                sb.append("  idom ").append(b.idom.name());
+            }
+            if (b.loopDepth > 0) {
+                sb.append("  loop depth ").append(b.loopDepth);
+            }
+            sb.append("\\l");
+            for (Instr i : b.code) {
+                if (i.isCode()) {
+                    sb.append("  ").append(escape(i.toString())).append("\\l");
+                }
+            }
+            sb.append("\"];\n");
+        }
+        for (Block b : blocks) {
+            for (Block s : b.succs) {
+                sb.append("    ").append(node(b)).append(" -> ").append(node(s));
+                if (isBackEdge(b, s)) {
+                    sb.append(" [style=dashed]");
+                }
+                sb.append(";\n");
+            }
+        }
+        sb.append("  }\n");
+    }
+
+    private String node(Block b) {
+        return "\"" + function + "." + b.name() + "\"";
+    }
+
+    private static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
@@ -1,37 +1,93 @@
 import java.io.*;
+import java.util.*;
 public class Codegen {
 
-    public static PrintWriter p = null;    
     public static final String TRUE = "1";
     public static final String FALSE = "0";
     public static final String FP = "$fp";
     public static final String SP = "$sp";
     public static final String RA = "$ra";
+    public static final String GP = "$gp";
+    public static final String GP_BASE = "__gp";
     public static final String V0 = "$v0";
     public static final String V1 = "$v1";
     public static final String A0 = "$a0";
     public static final String T0 = "$t0";
     public static final String T1 = "$t1";
-    private static final int MAXLEN = 6;
-    private static int currLabel = 0;
+    public static final String ZERO = "$zero";
+    public static final int NUM_TEMPS = 10;
+    private static final String[] TEMPS = {
+        "$t0", "$t1", "$t2", "$t3", "$t4", "$t5", "$t6", "$t7", "$t8", "$t9"
+    };
+    public static String temp(int r) {
+        return TEMPS[r];
+    }
+    public static boolean useRegisters() {
+        return CompileContext.get().options.enabled("registers");
+    }
+    // with registers on, all globals share one .sdata block that main
+    // points $gp at, so each access is a single lw/sw off($gp)
+    public static void beginGlobals() {
+        if (useRegisters()) {
+            CompileContext.get().gpOffsets = new HashMap<String, Integer>();
+        }
+    }
+    public static boolean hasGlobalPointer() {
+        return CompileContext.get().gpOffsets != null;
+    }
+    public static void genGlobal(String name, int size) {
+        CompileContext context = CompileContext.get();
+        if (context.gpOffsets == null) {
+            return;
+        }
+        if (context.gpOffsets.isEmpty()) {
+            genLabel(GP_BASE);
+        }
+        context.gpOffsets.put(name, context.gpSize);
+        context.gpSize += size;
+    }
+    // null for anything outside the $gp block
+    public static Integer gpOffset(String name) {
+        CompileContext context = CompileContext.get();
+        return context.gpOffsets == null ? null : context.gpOffsets.get(name);
+    }
+    // string literals are pooled ahead of code generation, each under one
+    // label
+    public static void internString(String literal) {
+        CompileContext context = CompileContext.get();
+        if (!context.strings.containsKey(literal)) {
+            context.strings.put(literal, nextLabel());
+        }
+    }
+    public static String stringLabel(String literal) {
+        CompileContext context = CompileContext.get();
+        internString(literal);
+        if (!context.stringsUsed.add(literal)) {
+            context.stats.count("stringDuplicates", 1);
+        }
+        return context.strings.get(literal);
+    }
+    // the whole pool in a single .data block
+    public static void genStringPool() {
+        CompileContext context = CompileContext.get();
+        if (context.strings.isEmpty()) {
+            return;
+        }
+        genDirective(".data");
+        for (Map.Entry<String, String> e : context.strings.entrySet()) {
+            generateLabeled(e.getValue(), ".asciiz " + e.getKey(), "");
+        }
+        context.stats.count("stringPool", context.strings.size());
+    }
     public static void generateWithComment(String opcode, String comment,
                                         String arg1, String arg2, String arg3) {
-        int space = MAXLEN - opcode.length() + 2;
-    
-        p.print("\t" + opcode);
-        if (arg1 != "") {
-            for (int k = 1; k <= space; k++) 
-                p.print(" ");
-            p.print(arg1);
-            if (arg2 != "") {
-                p.print(", " + arg2);
-                if (arg3 != "") 
-                    p.print(", " + arg3);
-            }
+
+        if (opcode == "") {
+            emit(Instr.comment(comment, line()));
+            return;
         }
-        if (comment != "") 
-            p.print("\t\t#" + comment);
-        p.println();
+        countInstruction(opcode);
+        emit(new Instr(Opcode.of(opcode), operands(arg1, arg2, arg3), comment, line()));
     }
 
     public static void generateWithComment(String opcode, String comment,
@@ -49,20 +105,7 @@ public class Codegen {
     }
     public static void generate(String opcode, String arg1, String arg2,
                                 String arg3) {
-        int space = MAXLEN - opcode.length() + 2;
-    
-        p.print("\t" + opcode);
-        if (arg1 != "") {
-            for (int k = 1; k <= space; k++) 
-                p.print(" ");
-            p.print(arg1);
-            if (arg2 != "") {
-                p.print(", " + arg2);
-                if (arg3 != "") 
-                    p.print(", " + arg3);
-            }
-        }
-        p.println();
+        generateWithComment(opcode, "", arg1, arg2, arg3);
     }
 
     public static void generate(String opcode, String arg1, String arg2) {
@@ -78,58 +121,57 @@ public class Codegen {
     }
     public static void generate(String opcode, String arg1, String arg2,
                                 int arg3) {
-        int space = MAXLEN - opcode.length() + 2;
-    
-        p.print("\t" + opcode);
-        for (int k = 1; k <= space; k++) 
-            p.print(" ");
-        p.println(arg1 + ", " + arg2 + ", " + arg3);
+        countInstruction(opcode);
+        emit(new Instr(Opcode.of(opcode),
+                       new Operand[] { Operand.parse(arg1), Operand.parse(arg2), new Imm(arg3) },
+                       "", line()));
     }
     public static void generate(String opcode, String arg1, int arg2) {
-        int space = MAXLEN - opcode.length() + 2;
-    
-        p.print("\t" + opcode);
-        for (int k = 1; k <= space; k++) 
-            p.print(" ");
-        p.println(arg1 + ", " + arg2);
+        countInstruction(opcode);
+        emit(new Instr(Opcode.of(opcode),
+                       new Operand[] { Operand.parse(arg1), new Imm(arg2) },
+                       "", line()));
     }
     public static void generateIndexed(String opcode, String arg1, String arg2,
                                        int arg3, String comment) {
-        int space = MAXLEN - opcode.length() + 2;
-    
-        p.print("\t" + opcode);
-        for (int k = 1; k <= space; k++) 
-            p.print(" ");
-        p.print(arg1 + ", " + arg3 + "(" + arg2 + ")");
-        if (comment != "") 
-            p.print("\t#" + comment);
-        p.println();
-    }
-    
+        countInstruction(opcode);
+        emit(new Instr(Opcode.of(opcode),
+                       new Operand[] { Operand.parse(arg1), new Mem(Reg.get(arg2), arg3) },
+                       comment, line()));
+    }
+
     public static void generateIndexed(String opcode, String arg1, String arg2,
                                        int arg3) {
         generateIndexed(opcode, arg1, arg2, arg3, "");
     }
     public static void generateLabeled(String label, String opcode,
                                        String comment, String arg1) {
-        int space = MAXLEN - opcode.length() + 2;
-    
-        p.print(label + ":");
-        p.print("\t" + opcode);
-        if (arg1 != "") {
-            for (int k = 1; k <= space; k++) 
-                p.print(" ");
-            p.print(arg1);
-        }
-        if (comment != "") 
-            p.print("\t# " + comment);
-        p.println();
+        countInstruction(opcode);
+        emit(Instr.data(label, opcode, arg1, comment, line()));
     }
 
     public static void generateLabeled(String label, String opcode,
                                        String comment) {
         generateLabeled(label, opcode, comment, "");
     }
+    public static void generateIndirect(String opcode, String arg1, String base) {
+        countInstruction(opcode);
+        emit(new Instr(Opcode.of(opcode),
+                       new Operand[] { Operand.parse(arg1), new Mem(Reg.get(base)) },
+                       "", line()));
+    }
+    public static void generateGlobal(String opcode, String arg1, String name) {
+        countInstruction(opcode);
+        emit(new Instr(Opcode.of(opcode),
+                       new Operand[] { Operand.parse(arg1), new LabelRef(name, true) },
+                       "", line()));
+    }
+    public static void generateUnterminated(String opcode) {
+        countInstruction(opcode);
+        Instr i = new Instr(Opcode.of(opcode), null, "", line());
+        i.newline = false;
+        emit(i);
+    }
     public static void genPush(String s) {
         generateIndexed("sw", s, SP, 0, "PUSH");
         generate("subu", SP, SP, 4);
@@ -139,18 +181,326 @@ public class Codegen {
         generate("addu", SP, SP, 4);
     }
     public static void genLabel(String label, String comment) {
-        p.print(label + ":");
-        if (comment != "") 
-            p.print("\t\t" + "# " + comment);
-        p.println();
+        emit(Instr.label(label, comment, line()));
     }
-    
+
     public static void genLabel(String label) {
         genLabel(label, "");
     }
+    // op branches when the condition holds and inverse when it does not; b is
+    // "" for the compare-with-zero branches
+    public static void genBranch(String op, String inverse, String a, String b,
+                                 String trueLabel, String falseLabel) {
+        if (trueLabel == null) {
+            branch(inverse, a, b, falseLabel);
+            return;
+        }
+        branch(op, a, b, trueLabel);
+        if (falseLabel != null) {
+            generate("j", falseLabel);
+        }
+    }
+    private static void branch(String op, String a, String b, String label) {
+        if (b == "") {
+            generate(op, a, label);
+        }
+        else {
+            generate(op, a, b, label);
+        }
+    }
+    // whether x * c fits in three shift/add instructions plus a negation:
+    // c is 0, +-2^a, +-(2^a + 2^b) or +-(2^a - 2^b)
+    public static boolean isShiftMultiplier(int c) {
+        long m = Math.abs((long) c);
+        if (m == 0) {
+            return true;
+        }
+        long low = m & -m;
+        return Long.bitCount(m) <= 2 || Long.bitCount(m + low) == 1;
+    }
+
+    // reg = reg * c for an isShiftMultiplier constant, using $v1 as scratch;
+    // the result is the low word mult/mflo would leave
+    public static void genMultiplyByConstant(String reg, int c) {
+        long m = Math.abs((long) c);
+        if (m == 0) {
+            generate("li", reg, 0);
+            return;
+        }
+        int low = Long.numberOfTrailingZeros(m);
+        long rest = m - (1L << low);
+        if (rest == 0) {
+            if (low > 0) {
+                generate("sll", reg, reg, low);
+            }
+        }
+        else if (Long.bitCount(rest) == 1) {
+            generate("sll", V1, reg, Long.numberOfTrailingZeros(rest));
+            if (low > 0) {
+                generate("sll", reg, reg, low);
+            }
+            generate("addu", reg, reg, V1);
+        }
+        else {
+            generate("sll", V1, reg, Long.numberOfTrailingZeros(m + (1L << low)));
+            if (low > 0) {
+                generate("sll", reg, reg, low);
+            }
+            generate("subu", reg, V1, reg);
+        }
+        if (c < 0) {
+            generate("subu", reg, ZERO, reg);
+        }
+    }
+
+    // reg = reg / d rounding toward zero like div; d must not be 0
+    public static void genDivideByConstant(String reg, int d) {
+        long m = Math.abs((long) d);
+        if (m == 1) {
+            if (d < 0) {
+                generate("subu", reg, ZERO, reg);
+            }
+            return;
+        }
+        if ((m & (m - 1)) == 0) {
+            int k = Long.numberOfTrailingZeros(m);
+            if (k > 1) {
+                generate("sra", V1, reg, 31);
+                generate("srl", V1, V1, 32 - k);
+            }
+            else {
+                generate("srl", V1, reg, 31);
+            }
+            generate("addu", V1, reg, V1);
+            generate("sra", reg, V1, k);
+            if (d < 0) {
+                generate("subu", reg, ZERO, reg);
+            }
+            return;
+        }
+        int[] magic = divisionMagic(d);
+        generate("li", V1, magic[0]);
+        generate("mult", reg, V1);
+        generate("mfhi", V1);
+        if (d > 0 && magic[0] < 0) {
+            generate("addu", V1, V1, reg);
+        }
+        else if (d < 0 && magic[0] > 0) {
+            generate("subu", V1, V1, reg);
+        }
+        if (magic[1] > 0) {
+            generate("sra", V1, V1, magic[1]);
+        }
+        generate("srl", reg, V1, 31);
+        generate("addu", reg, V1, reg);
+    }
+
+    // multiplier and shift for signed division by d, 2 <= |d| < 2^31
+    // (Hacker's Delight, section 10-4)
+    static int[] divisionMagic(int d) {
+        final long two31 = 1L << 31;
+        final long mask = 0xffffffffL;
+        long ad = Math.abs((long) d);
+        long t = two31 + (d < 0 ? 1 : 0);
+        long anc = t - 1 - t % ad;
+        int p = 31;
+        long q1 = two31 / anc;
+        long r1 = two31 - q1 * anc;
+        long q2 = two31 / ad;
+        long r2 = two31 - q2 * ad;
+        long delta;
+        do {
+            p++;
+            q1 = (2 * q1) & mask;
+            r1 = (2 * r1) & mask;
+            if (r1 >= anc) {
+                q1 = (q1 + 1) & mask;
+                r1 = (r1 - anc) & mask;
+            }
+            q2 = (2 * q2) & mask;
+            r2 = (2 * r2) & mask;
+            if (r2 >= ad) {
+                q2 = (q2 + 1) & mask;
+                r2 = (r2 - ad) & mask;
+            }
+            delta = ad - r2;
+        } while (q1 < delta || (q1 == delta && r1 == 0));
+        int magic = (int) (q2 + 1);
+        return new int[] { d < 0 ? -magic : magic, p - 32 };
+    }
+
+    // dst = 0 on fall-through, 1 when control arrives at branch
+    public static void genBoolean(String dst, String branch, String exit) {
+        generate("li", dst, 0);
+        generate("j", exit);
+        genLabel(branch);
+        generate("li", dst, 1);
+        genLabel(exit);
+    }
+    private static void countInstruction(String opcode) {
+        if (opcode.length() > 0 && opcode.charAt(0) != '.') {
+            CompileContext.get().stats.instructions++;
+        }
+    }
+    private static Operand[] operands(String arg1, String arg2, String arg3) {
+        if (arg1 == "") {
+            return null;
+        }
+        if (arg2 == "") {
+            return new Operand[] { Operand.parse(arg1) };
+        }
+        if (arg3 == "") {
+            return new Operand[] { Operand.parse(arg1), Operand.parse(arg2) };
+        }
+        return new Operand[] { Operand.parse(arg1), Operand.parse(arg2), Operand.parse(arg3) };
+    }
+    public static void genDirective(String directive) {
+        emit(Instr.directive(directive, line()));
+    }
+    public static void emit(Instr i) {
+        CompileContext.get().code.add(i);
+    }
+    public static void setLine(int line) {
+        CompileContext.get().line = line;
+    }
+    private static int line() {
+        return CompileContext.get().line;
+    }
+    public static void beginFunction(String name) {
+        flush();
+        CompileContext.get().function = name;
+    }
+    public static void beginFrameless() {
+        CompileContext.get().frameless = true;
+    }
+    public static boolean isFrameless() {
+        return CompileContext.get().frameless;
+    }
+    // locals and parameters are addressed from $sp when there is no frame
+    public static String frameReg() {
+        return isFrameless() ? SP : FP;
+    }
+    // called right after the prologue's subu $sp so inlining can grow it
+    public static void beginFrame(int size, int params) {
+        CompileContext context = CompileContext.get();
+        context.frame = new CompileContext.Frame(0, size, null, 0, null);
+        context.frameSize = size;
+        context.frameParams = params;
+        context.frameInstr = context.code.get(context.code.size() - 1);
+    }
+    // parameter slots above $fp that a tail call may overwrite
+    public static int frameParams() {
+        return CompileContext.get().frameParams;
+    }
+    // the label just past the prologue that a self tail call jumps back
+    // to; it is put in the first time it is asked for
+    public static String tailEntry() {
+        CompileContext context = CompileContext.get();
+        if (context.tailLabel == null) {
+            context.tailLabel = nextLabel();
+            Instr label = Instr.label(context.tailLabel, "TAIL entry", context.frameInstr.line);
+            context.code.add(context.code.indexOf(context.frameInstr) + 1, label);
+        }
+        return context.tailLabel;
+    }
+    // the instruction just emitted sets $fp; registers the function keeps
+    // for itself are saved right after it
+    public static void markPrologue() {
+        CompileContext context = CompileContext.get();
+        context.prologue = context.code.get(context.code.size() - 1);
+    }
+    // the instruction just emitted starts taking the frame down; saved
+    // registers are restored ahead of it
+    public static void markEpilogue() {
+        CompileContext context = CompileContext.get();
+        context.epilogues.add(context.code.get(context.code.size() - 1));
+    }
+    public static int frameSize() {
+        return CompileContext.get().frameSize;
+    }
+    public static int frameOffset(int offset) {
+        return offset + CompileContext.get().frame.bias;
+    }
+    // bias for a callee with the given parameter count and frame size placed
+    // below everything the current frame uses; the space is shared by all
+    // inlined calls since their bodies never overlap
+    public static int inlineBias(int params, int size) {
+        CompileContext context = CompileContext.get();
+        int bias = context.frame.bias - (context.frame.locals + 8) - 4 * params;
+        context.frameSize = Math.max(context.frameSize, size - bias);
+        return bias;
+    }
+    // returns the label the inlined body's returns jump to
+    public static String beginInline(int bias, int locals) {
+        CompileContext context = CompileContext.get();
+        String join = nextLabel();
+        context.frame = new CompileContext.Frame(bias, locals, join, context.line, context.frame);
+        return join;
+    }
+    public static void endInline(String comment) {
+        CompileContext context = CompileContext.get();
+        genLabel(context.frame.returnLabel, comment);
+        context.line = context.frame.line;
+        context.frame = context.frame.outer;
+    }
+    public static String returnLabel() {
+        return CompileContext.get().frame.returnLabel;
+    }
+    public static void noteSelfCall() {
+        CompileContext.get().selfCall = true;
+    }
+    public static boolean hasSelfCall() {
+        return CompileContext.get().selfCall;
+    }
+    public static int codeSize() {
+        int n = 0;
+        for (Instr i : CompileContext.get().code) {
+            if (i.isCode()) {
+                n++;
+            }
+        }
+        return n;
+    }
+    public static void endFunction() {
+        CompileContext context = CompileContext.get();
+        if (context.frameInstr != null && context.frameSize > context.frame.locals) {
+            context.frameInstr.args[2] = new Imm(context.frameSize);
+        }
+        context.frame = new CompileContext.Frame(0, 0, null, 0, null);
+        context.frameInstr = null;
+        context.frameParams = 0;
+        context.tailLabel = null;
+        context.selfCall = false;
+        context.frameless = false;
+        PassManager passes = PassManager.runFunction(context);
+        context.prologue = null;
+        context.epilogues.clear();
+        if (context.options.dumpCfg) {
+            Cfg cfg = passes.cfg();
+            context.stats.count("blocks", cfg.blocks().size());
+            context.stats.count("loops", cfg.loops().size());
+            cfg.toDot(context.cfgDot);
+        }
+        flush();
+        CompileContext.get().function = null;
+    }
+    public static void flush() {
+        CompileContext context = CompileContext.get();
+        if (context.code.isEmpty()) {
+            return;
+        }
+        new IRPrinter(context.out).print(context.code);
+        context.code.clear();
+    }
+    public static Emitter out() {
+        return CompileContext.get().out;
+    }
+    public static void setOutput(Emitter out) {
+        CompileContext.get().out = out;
+    }
     public static String nextLabel() {
-        Integer k = new Integer(currLabel++);
-        String tmp = ".L" + k;
-        return(tmp);
+        CompileContext context = CompileContext.get();
+        context.stats.labels++;
+        return ".L" + context.currLabel++;
     }
 }
@@ -0,0 +1,70 @@
+import java.io.*;
+import java.net.*;
+import java.nio.file.*;
+
+public class CompileClient {
+    private int port;
+
+    public CompileClient(int port) {
+        this.port = port;
+    }
+
+    // the server only answers a client that can read its token
+    public int send(String request, PrintStream diagnostics) throws IOException {
+        byte[] token = Files.readAllBytes(CompileServer.tokenFile(port).toPath());
+        request = new String(token, "UTF-8").trim() + "\t" + request;
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        try {
+            Writer out = new OutputStreamWriter(socket.getOutputStream(), "UTF-8");
+            out.write(request + "\n");
+            out.flush();
+
+            BufferedReader in = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), "UTF-8"));
+            String status = in.readLine();
+            if (status == null) {
+                throw new IOException("connection closed by compile server");
+            }
+            String line;
+            while ((line = in.readLine()) != null) {
+                diagnostics.println(line);
+            }
+            return Integer.parseInt(status.trim());
+        } finally {
+            socket.close();
+        }
+    }
+
+    public int compile(String infile, String outfile, PrintStream diagnostics) throws IOException {
+        String in = new File(infile).getAbsolutePath();
+        String out = new File(outfile).getAbsolutePath();
+        return send("COMPILE\t" + in + "\t" + out, diagnostics);
+    }
+
+    public static void main(String[] args) {
+        int port = CompileServer.DEFAULT_PORT;
+        String portEnv = System.getenv("CFLAT_SERVER_PORT");
+        if (portEnv != null) {
+            port = Integer.parseInt(portEnv);
+        }
+        CompileClient client = new CompileClient(port);
+        try {
+            if (args.length == 1 && args[0].equals("-shutdown")) {
+                System.exit(client.send("SHUTDOWN", System.err));
+            }
+            if (args.length < 1) {
+                System.err.println("usage: CompileClient <infile> [outfile] | -shutdown");
+                System.exit(Compiler.RESULT_OTHER_ERROR);
+            }
+            String outfile = args.length > 1 ? args[1] : Compiler.outfileFor(args[0]);
+            int resultCode = client.compile(args[0], outfile, System.err);
+            if (resultCode != Compiler.RESULT_CORRECT) {
+                System.err.println(Compiler.resultMessage(resultCode));
+            }
+            System.exit(resultCode);
+        } catch (IOException e) {
+            System.err.println("could not reach compile server: " + e.getMessage());
+            System.exit(Compiler.RESULT_OTHER_ERROR);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+import java.io.*;
+import java.util.*;
+
+public class CompileContext {
+    private static final ThreadLocal<CompileContext> current =
+        new ThreadLocal<CompileContext>() {
+            @Override
+            protected CompileContext initialValue() {
+                return new CompileContext(System.err);
+            }
+        };
+
+    Emitter out = null;
+    List<Instr> code = new ArrayList<Instr>();
+    String function = null;
+    boolean frameless = false;
+    Frame frame = new Frame(0, 0, null, 0, null);
+    int frameSize = 0;
+    Instr frameInstr = null;
+    int frameParams = 0;
+    String tailLabel = null;
+    Instr prologue = null;
+    List<Instr> epilogues = new ArrayList<Instr>();
+    Map<String, Integer> gpOffsets = null;
+    int gpSize = 0;
+    Map<String, String> strings = new LinkedHashMap<String, String>();
+    Set<String> stringsUsed = new HashSet<String>();
+    StringBuilder cfgDot = new StringBuilder();
+    StringBuilder ssaDump = new StringBuilder();
+    boolean selfCall = false;
+    int line = 0;
+    int currLabel = 0;
+    boolean err = false;
+    PrintStream diagnostics;
+    CompileStats stats = new CompileStats();
+    CompilerOptions options = new CompilerOptions();
+
+    // the frame the code being generated addresses: $fp + bias for the
+    // function itself (bias 0) or for a callee inlined into it
+    static class Frame {
+        final int bias;
+        final int locals;
+        final String returnLabel;
+        final int line;
+        final Frame outer;
+
+        Frame(int bias, int locals, String returnLabel, int line, Frame outer) {
+            this.bias = bias;
+            this.locals = locals;
+            this.returnLabel = returnLabel;
+            this.line = line;
+            this.outer = outer;
+        }
+    }
+
+    public CompileContext(PrintStream diagnostics) {
+        this.diagnostics = diagnostics;
+    }
+
+    public static CompileContext get() {
+        return current.get();
+    }
+
+    public static void set(CompileContext context) {
+        current.set(context);
+    }
+
+    public static CompileContext begin(PrintStream diagnostics) {
+        CompileContext context = new CompileContext(diagnostics);
+        current.set(context);
+        return context;
+    }
+}
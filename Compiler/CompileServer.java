@@ -0,0 +1,207 @@
+import java.io.*;
+import java.net.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.security.*;
+import java.util.concurrent.*;
+
+// compiles for clients on the loopback interface.  Any local user can
+// connect, so every request starts with the token the server leaves,
+// readable by its owner alone, in tokenFile(port); and a compile writes
+// only to the input's own .s file or to a .s file under the root the
+// server was started with
+public class CompileServer {
+    public static final int DEFAULT_PORT = 5536;
+    public static final int DEFAULT_WORKERS = 4;
+    public static final int DEFAULT_QUEUE = 64;
+    // a client that connects and sends nothing holds a worker this long
+    public static final int READ_TIMEOUT_MS = 5000;
+
+    private ServerSocket server;
+    private ThreadPoolExecutor workers;
+    private volatile boolean running = true;
+    private File root;
+    private File tokenFile;
+    private String token;
+
+    public CompileServer(int port, int nworkers, int queueSize, File root) throws IOException {
+        server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        workers = new ThreadPoolExecutor(nworkers, nworkers, 0L, TimeUnit.MILLISECONDS,
+                                         new ArrayBlockingQueue<Runnable>(queueSize),
+                                         workerThreads());
+        this.root = root == null ? null : root.getCanonicalFile();
+        tokenFile = tokenFile(getPort());
+        token = newToken();
+        writeToken(tokenFile, token);
+    }
+
+    public static File tokenFile(int port) {
+        return new File(System.getProperty("user.home"), ".cflat-server-" + port);
+    }
+
+    private static String newToken() {
+        byte[] bytes = new byte[16];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    private static void writeToken(File file, String token) throws IOException {
+        Path path = file.toPath();
+        Files.deleteIfExists(path);
+        try {
+            Files.createFile(path, PosixFilePermissions.asFileAttribute(
+                PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            Files.createFile(path);
+            file.setReadable(false, false);
+            file.setReadable(true, true);
+            file.setWritable(false, false);
+            file.setWritable(true, true);
+        }
+        Files.write(path, token.getBytes("UTF-8"));
+    }
+
+    private static ThreadFactory workerThreads() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder")
+                                        .getMethod("factory").invoke(builder);
+        } catch (Exception e) {
+            return Executors.defaultThreadFactory();
+        }
+    }
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    public void serve() throws IOException {
+        while (running) {
+            final Socket client;
+            try {
+                client = server.accept();
+            } catch (SocketException e) {
+                if (!running) {
+                    break;
+                }
+                throw e;
+            }
+            try {
+                workers.execute(new Runnable() {
+                    public void run() {
+                        handle(client);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                reply(client, Compiler.RESULT_OTHER_ERROR, "server busy\n");
+            }
+        }
+        workers.shutdown();
+        tokenFile.delete();
+    }
+
+    public void shutdown() {
+        running = false;
+        try {
+            server.close();
+        } catch (IOException e) {
+        }
+    }
+
+    private void handle(Socket client) {
+        try {
+            client.setSoTimeout(READ_TIMEOUT_MS);
+            BufferedReader in = new BufferedReader(
+                new InputStreamReader(client.getInputStream(), "UTF-8"));
+            String line = in.readLine();
+            if (line == null) {
+                return;
+            }
+            String[] request = line.split("\t");
+            if (!MessageDigest.isEqual(token.getBytes("UTF-8"), request[0].getBytes("UTF-8"))) {
+                reply(client, Compiler.RESULT_OTHER_ERROR, "request refused: bad token\n");
+                return;
+            }
+            if (request.length > 1 && request[1].equals("SHUTDOWN")) {
+                reply(client, Compiler.RESULT_CORRECT, "");
+                shutdown();
+                return;
+            }
+            if (request.length < 3 || !request[1].equals("COMPILE")) {
+                reply(client, Compiler.RESULT_OTHER_ERROR, "bad request\n");
+                return;
+            }
+
+            String infile = request[2];
+            String outfile = request.length > 3 ? request[3] : Compiler.outfileFor(infile);
+            if (!writable(new File(infile), new File(outfile))) {
+                reply(client, Compiler.RESULT_OTHER_ERROR,
+                      outfile + ": output must be " + Compiler.outfileFor(infile)
+                      + (root == null ? "" : " or a .s file under " + root) + "\n");
+                return;
+            }
+            ByteArrayOutputStream diagnostics = new ByteArrayOutputStream();
+            PrintStream diagStream = new PrintStream(diagnostics, true, "UTF-8");
+            int resultCode = new Compiler().compile(infile, outfile, diagStream);
+            diagStream.close();
+            reply(client, resultCode, diagnostics.toString("UTF-8"));
+        } catch (SocketTimeoutException e) {
+            // no request in time; the socket is closed below
+        } catch (IOException e) {
+        } finally {
+            try {
+                client.close();
+            } catch (IOException e) {
+            }
+        }
+    }
+
+    // out is the .s file of in, or a .s file anywhere below root
+    private boolean writable(File in, File out) throws IOException {
+        in = in.getCanonicalFile();
+        out = out.getCanonicalFile();
+        if (out.equals(new File(Compiler.outfileFor(in.getPath())))) {
+            return true;
+        }
+        if (out.equals(in) || !out.getName().endsWith(".s")) {
+            return false;
+        }
+        for (File d = out.getParentFile(); root != null && d != null; d = d.getParentFile()) {
+            if (d.equals(root)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void reply(Socket client, int resultCode, String diagnostics) {
+        try {
+            Writer out = new OutputStreamWriter(client.getOutputStream(), "UTF-8");
+            out.write(resultCode + "\n");
+            out.write(diagnostics);
+            out.flush();
+            client.close();
+        } catch (IOException e) {
+        }
+    }
+
+    public static void main(String[] args) {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int nworkers = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_WORKERS;
+        int queueSize = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_QUEUE;
+        File root = args.length > 3 ? new File(args[3]) : null;
+        try {
+            CompileServer instance = new CompileServer(port, nworkers, queueSize, root);
+            System.err.println("compile server listening on port " + instance.getPort()
+                               + ", token in " + instance.tokenFile);
+            instance.serve();
+        } catch (IOException e) {
+            System.err.println("compile server: " + e.getMessage());
+            System.exit(-1);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+
+public class CompileStats {
+    long tokens = 0;
+    long astNodes = 0;
+    long symbols = 0;
+    long scopes = 0;
+    long instructions = 0;
+    long labels = 0;
+
+    private Map<String, Long> counters = new LinkedHashMap<String, Long>();
+    private List<Phase> phases = new ArrayList<Phase>();
+    private Map<String, long[]> passes = new LinkedHashMap<String, long[]>();
+    private Phase current = null;
+
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    private static class Phase {
+        String name;
+        long wallNanos;
+        long cpuNanos;
+        long allocatedBytes;
+        long[] counts;
+    }
+
+    public static CompileStats get() {
+        return CompileContext.get().stats;
+    }
+
+    public void count(String name, long delta) {
+        Long old = counters.get(name);
+        counters.put(name, (old == null ? 0 : old) + delta);
+    }
+
+    public long counter(String name) {
+        Long value = counters.get(name);
+        return value == null ? 0 : value;
+    }
+
+    private long[] snapshot() {
+        return new long[] { tokens, astNodes, symbols, scopes, instructions, labels };
+    }
+
+    private static long cpuTime() {
+        return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : 0;
+    }
+
+    private static long allocatedBytes() {
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean t = (com.sun.management.ThreadMXBean) threads;
+            if (t.isThreadAllocatedMemorySupported() && t.isThreadAllocatedMemoryEnabled()) {
+                return t.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return 0;
+    }
+
+    public void beginPhase(String name) {
+        if (current != null) {
+            endPhase();
+        }
+        current = new Phase();
+        current.name = name;
+        current.counts = snapshot();
+        current.allocatedBytes = allocatedBytes();
+        current.cpuNanos = cpuTime();
+        current.wallNanos = System.nanoTime();
+    }
+
+    public void endPhase() {
+        if (current == null) {
+            return;
+        }
+        current.wallNanos = System.nanoTime() - current.wallNanos;
+        current.cpuNanos = cpuTime() - current.cpuNanos;
+        current.allocatedBytes = allocatedBytes() - current.allocatedBytes;
+        long[] now = snapshot();
+        for (int i = 0; i < now.length; i++) {
+            current.counts[i] = now[i] - current.counts[i];
+        }
+        phases.add(current);
+        current = null;
+    }
+
+    // runs and wall time of an optimization pass, summed over functions
+    public void timePass(String name, long nanos) {
+        long[] t = passes.get(name);
+        if (t == null) {
+            t = new long[2];
+            passes.put(name, t);
+        }
+        t[0]++;
+        t[1] += nanos;
+    }
+
+    private static final String[] COUNT_NAMES = {
+        "tokens", "astNodes", "symbols", "scopes", "instructions", "labels"
+    };
+
+    public String toJson(String source, int resultCode) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\n");
+        sb.append("  \"source\": ").append(quote(source)).append(",\n");
+        sb.append("  \"result\": ").append(resultCode).append(",\n");
+        sb.append("  \"phases\": [");
+        for (int i = 0; i < phases.size(); i++) {
+            Phase ph = phases.get(i);
+            sb.append(i == 0 ? "\n" : ",\n");
+            sb.append("    {\"name\": ").append(quote(ph.name));
+            sb.append(", \"wallNanos\": ").append(ph.wallNanos);
+            sb.append(", \"cpuNanos\": ").append(ph.cpuNanos);
+            sb.append(", \"allocatedBytes\": ").append(ph.allocatedBytes);
+            for (int k = 0; k < COUNT_NAMES.length; k++) {
+                sb.append(", \"").append(COUNT_NAMES[k]).append("\": ").append(ph.counts[k]);
+            }
+            sb.append("}");
+        }
+        sb.append(phases.isEmpty() ? "],\n" : "\n  ],\n");
+        sb.append("  \"passes\": [");
+        int n = 0;
+        for (Map.Entry<String, long[]> e : passes.entrySet()) {
+            sb.append(n++ == 0 ? "\n" : ",\n");
+            sb.append("    {\"name\": ").append(quote(e.getKey()));
+            sb.append(", \"runs\": ").append(e.getValue()[0]);
+            sb.append(", \"wallNanos\": ").append(e.getValue()[1]).append("}");
+        }
+        sb.append(passes.isEmpty() ? "],\n" : "\n  ],\n");
+        sb.append("  \"totals\": {");
+        long[] totals = snapshot();
+        for (int k = 0; k < COUNT_NAMES.length; k++) {
+            sb.append(k == 0 ? "" : ", ");
+            sb.append("\"").append(COUNT_NAMES[k]).append("\": ").append(totals[k]);
+        }
+        for (Map.Entry<String, Long> e : counters.entrySet()) {
+            sb.append(", ").append(quote(e.getKey())).append(": ").append(e.getValue());
+        }
+        sb.append("}\n");
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    static String quote(String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+            case '"':
+                sb.append("\\\"");
+                break;
+            case '\\':
+                sb.append("\\\\");
+                break;
+            case '\n':
+                sb.append("\\n");
+                break;
+            case '\t':
+                sb.append("\\t");
+                break;
+            default:
+                if (c < 0x20) {
+                    sb.append(String.format("\\u%04x", (int) c));
+                } else {
+                    sb.append(c);
+                }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    public void write(String path, String source, int resultCode) throws IOException {
+        Writer out = new OutputStreamWriter(new FileOutputStream(path), "UTF-8");
+        try {
+            out.write(toJson(source, resultCode));
+        } finally {
+            out.close();
+        }
+    }
+}
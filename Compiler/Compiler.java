@@ -1,11 +1,15 @@
 import java.io.*;
 import java.lang.*;
+import java.util.*;
+import java.util.concurrent.*;
 
-import java_cup.parser;
 import java_cup.runtime.*;
 public class Compiler {
     FileReader inFile;
-    private PrintWriter outFile;
+    private Emitter outFile;
+    private String inName;
+    private String outName;
+    private CompilerOptions options;
     private static PrintStream outStream = System.err;
 
     public static final int RESULT_CORRECT = 0;
@@ -14,18 +18,24 @@ public class Compiler {
     public static final int RESULT_TYPE_ERROR = 3;
     public static final int RESULT_OTHER_ERROR = -1;
     public Compiler(){
+        this(new CompilerOptions());
     }
-    private Compiler(String[] args){
+    public Compiler(CompilerOptions options){
+        this.options = options;
+    }
+    private Compiler(CompilerOptions options, List<String> args){
+        this.options = options;
+        CompileContext.get().options = options;
 
-        if (args.length < 2) {
+        if (args.size() < 2) {
 	        String msg = "please supply name of file to be parsed"
 			        + "and name of file for unparsed version.";
 	        pukeAndDie(msg);
         }
 
         try{
-            setInfile(args[0]);
-            setOutfile(args[1]);
+            setInfile(args.get(0));
+            setOutfile(args.get(1));
         } catch(BadInfileException e){
             pukeAndDie(e.getMessage());			
         } catch(BadOutfileException e){
@@ -35,13 +45,16 @@ public class Compiler {
     public void setInfile(String filename) throws BadInfileException{
         try {
             inFile = new FileReader(filename);
+            inName = filename;
         } catch (FileNotFoundException ex) {
             throw new BadInfileException(ex, filename);
         }
     }
     public void setOutfile(String filename) throws BadOutfileException{
         try {
-            Codegen.p = new PrintWriter(filename);
+            outFile = Emitter.open(filename);
+            outName = filename;
+            Codegen.setOutput(outFile);
         } catch (FileNotFoundException ex) {
             throw new BadOutfileException(ex, filename);
         }
@@ -54,9 +67,14 @@ public class Compiler {
             }
         }
         if (outFile != null){
-            outFile.flush();
-            outFile.close();
+            try {
+                outFile.close();
+            } catch (UncheckedIOException e) {
+                outStream.println("Could not write " + outName + ": " + e.getCause().getMessage());
+            }
         }
+        inFile = null;
+        outFile = null;
     }
     private void pukeAndDie(String error){
         pukeAndDie(error, -1);
@@ -68,7 +86,14 @@ public class Compiler {
     }
     private Symbol parseCFG(){
         try {
-            parser P = new parser(new Yylex(inFile));
+            final Yylex lexer = new Yylex(inFile);
+            final CompileStats stats = CompileStats.get();
+            parser P = new parser(new java_cup.runtime.Scanner() {
+                public Symbol next_token() throws Exception {
+                    stats.tokens++;
+                    return lexer.next_token();
+                }
+            });
             return P.parse();
         } catch (Exception e){
             return null;
@@ -76,31 +101,291 @@ public class Compiler {
     }
 
     public int process(){
+        CompileStats stats = CompileStats.get();
+        stats.beginPhase("parse");
         Symbol cfgRoot = parseCFG();
+        stats.endPhase();
 
-        ProgramNode astRoot = (ProgramNode)cfgRoot.value; 
-        if (ErrMsg.getErr()) {  
+        if (cfgRoot == null || ErrMsg.getErr()) {  
             return Compiler.RESULT_SYNTAX_ERROR;
         }
+        ProgramNode astRoot = (ProgramNode)cfgRoot.value; 
 
+        stats.beginPhase("nameAnalysis");
         astRoot.nameAnalysis();
+        stats.endPhase();
         if (ErrMsg.getErr()) {
 
             return Compiler.RESULT_NAME_ERROR;
         }		
 
+        stats.beginPhase("typeCheck");
         astRoot.typeCheck();
+        stats.endPhase();
         if (ErrMsg.getErr()){
 
             return Compiler.RESULT_TYPE_ERROR;
         }
 
+        PassManager.runProgram(astRoot);
+
+        stats.beginPhase("codeGen");
         astRoot.codeGen();
+        stats.endPhase();
         return Compiler.RESULT_CORRECT;
     }
 
+    private void writeStats(int resultCode){
+        if (!options.stats || outName == null) {
+            return;
+        }
+        String path = options.statsFileFor(outName);
+        try {
+            CompileStats.get().write(path, inName, resultCode);
+        } catch (IOException e) {
+            CompileContext.get().diagnostics.println("Could not write stats to " + path);
+        }
+    }
+
+    private void writeCfg(){
+        if (!options.dumpCfg || outName == null) {
+            return;
+        }
+        String path = options.cfgFileFor(outName);
+        String dot = "digraph cfg {\n  node [fontname=monospace];\n"
+            + CompileContext.get().cfgDot + "}\n";
+        writeDump(path, dot, "CFG");
+    }
+
+    private void writeSsa(){
+        if (options.dumpSsa && outName != null) {
+            writeDump(options.ssaFileFor(outName), CompileContext.get().ssaDump.toString(), "SSA");
+        }
+    }
+
+    private void writeDump(String path, String text, String what){
+        try {
+            Writer out = new OutputStreamWriter(new FileOutputStream(path), "UTF-8");
+            try {
+                out.write(text);
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            CompileContext.get().diagnostics.println("Could not write " + what + " to " + path);
+        }
+    }
+
+    public int compile(String infile, String outfile){
+        return compile(infile, outfile, outStream);
+    }
+
+    public int compile(String infile, String outfile, PrintStream diagnostics){
+        CompileContext.begin(diagnostics).options = options;
+        try{
+            setInfile(infile);
+            setOutfile(outfile);
+        } catch(BadInfileException e){
+            diagnostics.println(e.getMessage());
+            cleanup();
+            return RESULT_OTHER_ERROR;
+        } catch(BadOutfileException e){
+            diagnostics.println(e.getMessage());
+            cleanup();
+            return RESULT_OTHER_ERROR;
+        }
+
+        int resultCode;
+        try {
+            resultCode = process();
+        } catch (Throwable e){
+            // an Error such as StackOverflowError on deeply nested input
+            // fails this file alone
+            diagnostics.println(infile + ": " + e);
+            resultCode = RESULT_OTHER_ERROR;
+        } finally {
+            cleanup();
+        }
+        writeStats(resultCode);
+        writeCfg();
+        writeSsa();
+        return resultCode;
+    }
+
+    public static String resultMessage(int resultCode){
+        switch(resultCode){
+        case RESULT_CORRECT:
+            return "OK";
+        case RESULT_SYNTAX_ERROR:
+            return "Syntax error";
+        case RESULT_NAME_ERROR:
+            return "Name analysis error";
+        case RESULT_TYPE_ERROR:
+            return "Type checking error";
+        default:
+            return "Compilation error";
+        }
+    }
+
+    public static String outfileFor(String infile){
+        if (infile.endsWith(".cf")) {
+            return infile.substring(0, infile.length() - 3) + ".s";
+        }
+        return infile + ".s";
+    }
+
+    public static List<String> batchSources(String[] args, int first) throws IOException{
+        List<String> sources = new ArrayList<String>();
+        for (int i = first; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.startsWith("@")) {
+                BufferedReader manifest = new BufferedReader(new FileReader(arg.substring(1)));
+                try {
+                    String line;
+                    while ((line = manifest.readLine()) != null) {
+                        line = line.trim();
+                        if (line.length() > 0 && !line.startsWith("#")) {
+                            sources.add(line);
+                        }
+                    }
+                } finally {
+                    manifest.close();
+                }
+            }
+            else if (new File(arg).isDirectory()) {
+                File[] files = new File(arg).listFiles();
+                List<String> names = new ArrayList<String>();
+                for (File f : files) {
+                    if (f.isFile() && f.getName().endsWith(".cf")) {
+                        names.add(f.getPath());
+                    }
+                }
+                Collections.sort(names);
+                sources.addAll(names);
+            }
+            else {
+                sources.add(arg);
+            }
+        }
+        return sources;
+    }
+
+    public static class BatchResult {
+        public final String source;
+        public final int resultCode;
+        public final long nanos;
+        public final String diagnostics;
+
+        BatchResult(String source, int resultCode, long nanos, String diagnostics) {
+            this.source = source;
+            this.resultCode = resultCode;
+            this.nanos = nanos;
+            this.diagnostics = diagnostics;
+        }
+    }
+
+    public static BatchResult compileOne(CompilerOptions options, String infile){
+        ByteArrayOutputStream diagnostics = new ByteArrayOutputStream();
+        PrintStream diagStream = new PrintStream(diagnostics, true);
+        long start = System.nanoTime();
+        int resultCode = new Compiler(options).compile(infile, outfileFor(infile), diagStream);
+        long nanos = System.nanoTime() - start;
+        diagStream.close();
+        return new BatchResult(infile, resultCode, nanos, diagnostics.toString());
+    }
+
+    // every batch compile runs on a thread with this much stack, whatever
+    // -j is, so a deeply nested file fails or succeeds the same way in a
+    // sequential and a parallel batch
+    static final long BATCH_STACK_SIZE = 16L << 20;
+
+    private static ThreadFactory batchThreads() {
+        return new ThreadFactory() {
+            private int count = 0;
+
+            public synchronized Thread newThread(Runnable r) {
+                Thread t = new Thread(null, r, "compile-" + count++, BATCH_STACK_SIZE);
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+
+    public static List<BatchResult> compileBatch(final CompilerOptions options,
+                                                 List<String> sources, int jobs){
+        List<BatchResult> results = new ArrayList<BatchResult>();
+        List<Callable<BatchResult>> tasks = new ArrayList<Callable<BatchResult>>();
+        for (final String infile : sources) {
+            tasks.add(new Callable<BatchResult>() {
+                public BatchResult call() {
+                    return compileOne(options, infile);
+                }
+            });
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(jobs, 1), batchThreads());
+        try {
+            for (Future<BatchResult> f : pool.invokeAll(tasks)) {
+                results.add(f.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        return results;
+    }
+
+    private static int runBatch(CompilerOptions options, String[] args){
+        int first = args[0].equals("-batch") ? 1 : 0;
+        int jobs = 1;
+        if (args.length > first + 1 && args[first].equals("-j")) {
+            try {
+                jobs = Integer.parseInt(args[first + 1]);
+            } catch (NumberFormatException e) {
+                outStream.println("bad job count: " + args[first + 1]);
+                return RESULT_OTHER_ERROR;
+            }
+            first += 2;
+        }
+
+        List<String> sources;
+        try {
+            sources = batchSources(args, first);
+            if (sources.size() > 1) {
+                options.statsFile = null;
+                options.cfgFile = null;
+                options.ssaFile = null;
+            }
+        } catch (IOException e) {
+            outStream.println("Could not read batch manifest: " + e.getMessage());
+            return RESULT_OTHER_ERROR;
+        }
+
+        long start = System.nanoTime();
+        List<BatchResult> results = compileBatch(options, sources, jobs);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        int failed = 0;
+        for (BatchResult r : results) {
+            if (r.resultCode != RESULT_CORRECT) {
+                failed++;
+            }
+            outStream.print(r.diagnostics);
+            outStream.printf("%s: %d %s (%.3f ms)%n", r.source, r.resultCode,
+                             resultMessage(r.resultCode), r.nanos / 1e6);
+        }
+        outStream.printf("%d files, %d failed, %d jobs, %.3f s, %.1f files/sec%n",
+                         results.size(), failed, jobs, seconds,
+                         seconds > 0 ? results.size() / seconds : 0.0);
+        return failed == 0 ? RESULT_CORRECT : RESULT_OTHER_ERROR;
+    }
+
     public void run(){
         int resultCode = process();
+        writeStats(resultCode);
+        writeCfg();
+        writeSsa();
         if (resultCode == RESULT_CORRECT){
             cleanup();
             return;
@@ -149,8 +434,18 @@ public class Compiler {
     }
 
     public static void main(String[] args){
-        Compiler instance = new Compiler(args);
+        CompilerOptions options = new CompilerOptions();
+        List<String> rest = null;
+        try {
+            rest = options.parse(args);
+        } catch (IllegalArgumentException e) {
+            outStream.println(e.getMessage());
+            System.exit(RESULT_OTHER_ERROR);
+        }
+        if (rest.size() > 0 && (rest.get(0).equals("-batch") || rest.get(0).equals("-j"))) {
+            System.exit(runBatch(options, rest.toArray(new String[rest.size()])));
+        }
+        Compiler instance = new Compiler(options, rest);
         instance.run();
-        Codegen.p.close();
     }
 }
@@ -0,0 +1,124 @@
+import java.util.*;
+
+public class CompilerOptions {
+    public boolean stats = false;
+    public String statsFile = null;
+    public int optLevel = 0;
+    public boolean optSize = false;
+    public List<String> passList = null;
+    public Set<String> disabled = new HashSet<String>();
+    // -1 until --inline-threshold= sets it; the level picks it otherwise
+    public int inlineThreshold = -1;
+    public boolean dumpCfg = false;
+    public String cfgFile = null;
+    public boolean dumpSsa = false;
+    public String ssaFile = null;
+
+    private List<String> pipeline;
+
+    public CompilerOptions() {
+        pipeline = PassManager.pipeline(this);
+    }
+
+    public List<String> parse(String[] args) throws IllegalArgumentException {
+        List<String> rest = new ArrayList<String>();
+        for (String arg : args) {
+            if (arg.equals("--stats")) {
+                stats = true;
+            }
+            else if (arg.startsWith("--stats=")) {
+                stats = true;
+                statsFile = arg.substring("--stats=".length());
+            }
+            else if (arg.equals("--dump-cfg")) {
+                dumpCfg = true;
+            }
+            else if (arg.startsWith("--dump-cfg=")) {
+                dumpCfg = true;
+                cfgFile = arg.substring("--dump-cfg=".length());
+            }
+            else if (arg.equals("--dump-ssa")) {
+                dumpSsa = true;
+            }
+            else if (arg.startsWith("--dump-ssa=")) {
+                dumpSsa = true;
+                ssaFile = arg.substring("--dump-ssa=".length());
+            }
+            else if (arg.equals("--no-loop-rotation")) {
+                disabled.add("rotate-loops");
+            }
+            else if (arg.equals("--no-tail-calls")) {
+                disabled.add("tail-calls");
+            }
+            else if (arg.startsWith("--passes=")) {
+                String list = arg.substring("--passes=".length());
+                passList = list.isEmpty() ? new ArrayList<String>() : Arrays.asList(list.split(","));
+            }
+            else if (arg.startsWith("--inline-threshold=")) {
+                inlineThreshold = parseCount(arg, "--inline-threshold=".length());
+            }
+            else if (arg.equals("-Os")) {
+                optLevel = 1;
+                optSize = true;
+            }
+            else if (arg.startsWith("-O")) {
+                optLevel = parseOptLevel(arg.substring(2));
+                optSize = false;
+            }
+            else if (arg.startsWith("--")) {
+                throw new IllegalArgumentException("unknown option " + arg);
+            }
+            else {
+                rest.add(arg);
+            }
+        }
+        pipeline = PassManager.pipeline(this);
+        return rest;
+    }
+
+    public List<String> pipeline() {
+        return pipeline;
+    }
+
+    public boolean enabled(String pass) {
+        return pipeline.contains(pass);
+    }
+
+    // 0 when inlining is off; -O2 inlines larger callees
+    public int inlineThreshold() {
+        if (!enabled("inline")) {
+            return 0;
+        }
+        return inlineThreshold >= 0 ? inlineThreshold : optLevel >= 2 ? 64 : 32;
+    }
+
+    private static int parseOptLevel(String level) {
+        if (level.length() == 1 && level.charAt(0) >= '0' && level.charAt(0) <= '2') {
+            return level.charAt(0) - '0';
+        }
+        throw new IllegalArgumentException("unknown optimization level -O" + level);
+    }
+
+    private static int parseCount(String arg, int start) {
+        try {
+            int n = Integer.parseInt(arg.substring(start));
+            if (n >= 0) {
+                return n;
+            }
+        } catch (NumberFormatException e) {
+        }
+        throw new IllegalArgumentException("bad value in " + arg);
+    }
+
+    public String statsFileFor(String outfile) {
+        return statsFile != null ? statsFile : outfile + ".stats.json";
+    }
+
+    public String cfgFileFor(String outfile) {
+        return cfgFile != null ? cfgFile : outfile + ".cfg.dot";
+    }
+
+    public String ssaFileFor(String outfile) {
+        return ssaFile != null ? ssaFile : outfile + ".ssa";
+    }
+}
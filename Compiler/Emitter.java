@@ -0,0 +1,133 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+
+public class Emitter {
+    private static final int BUFSIZE = 1 << 16;
+    private static final char[] SPACES = "                                ".toCharArray();
+
+    private WritableByteChannel channel;
+    private char[] buf = new char[BUFSIZE];
+    private int pos = 0;
+    private CharsetEncoder encoder = Charset.defaultCharset().newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private ByteBuffer bytes = ByteBuffer.allocateDirect(BUFSIZE * 4);
+    private char[] digits = new char[11];
+
+    public Emitter(WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    public static Emitter open(String filename) throws FileNotFoundException {
+        return new Emitter(new FileOutputStream(filename).getChannel());
+    }
+
+    public Emitter put(char c) {
+        if (pos == buf.length) {
+            flush();
+        }
+        buf[pos++] = c;
+        return this;
+    }
+
+    public Emitter put(String s) {
+        int len = s.length();
+        if (len > buf.length - pos) {
+            flush();
+            if (len > buf.length) {
+                buf = new char[len];
+            }
+        }
+        s.getChars(0, len, buf, pos);
+        pos += len;
+        return this;
+    }
+
+    public Emitter put(int n) {
+        if (n == Integer.MIN_VALUE) {
+            return put("-2147483648");
+        }
+        if (pos + digits.length > buf.length) {
+            flush();
+        }
+        if (n < 0) {
+            buf[pos++] = '-';
+            n = -n;
+        }
+        int k = digits.length;
+        do {
+            digits[--k] = (char) ('0' + n % 10);
+            n /= 10;
+        } while (n != 0);
+        int len = digits.length - k;
+        System.arraycopy(digits, k, buf, pos, len);
+        pos += len;
+        return this;
+    }
+
+    public Emitter pad(int n) {
+        while (n > 0) {
+            int len = Math.min(n, SPACES.length);
+            if (len > buf.length - pos) {
+                flush();
+            }
+            System.arraycopy(SPACES, 0, buf, pos, len);
+            pos += len;
+            n -= len;
+        }
+        return this;
+    }
+
+    public Emitter newline() {
+        return put('\n');
+    }
+
+    public Emitter putLine(String s) {
+        return put(s).put('\n');
+    }
+
+    public void flush() {
+        if (pos == 0) {
+            return;
+        }
+        try {
+            CharBuffer chars = CharBuffer.wrap(buf, 0, pos);
+            encoder.reset();
+            while (true) {
+                CoderResult result = encoder.encode(chars, bytes, true);
+                if (result.isUnderflow()) {
+                    result = encoder.flush(bytes);
+                }
+                drain();
+                if (result.isUnderflow()) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        pos = 0;
+    }
+
+    private void drain() throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        bytes.clear();
+    }
+
+    public void close() {
+        try {
+            flush();
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
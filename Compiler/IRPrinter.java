@@ -0,0 +1,60 @@
+import java.util.*;
+
+public class IRPrinter {
+    private static final int MAXLEN = 6;
+
+    private Emitter p;
+
+    public IRPrinter(Emitter p) {
+        this.p = p;
+    }
+
+    public void print(List<Instr> code) {
+        for (Instr i : code) {
+            print(i);
+        }
+    }
+
+    public void print(Instr i) {
+        switch (i.op) {
+        case LABEL:
+            p.put(i.label).put(':');
+            if (i.comment != "")
+                p.put("\t\t# ").put(i.comment);
+            break;
+        case COMMENT:
+            p.put("\t\t\t#").put(i.comment);
+            break;
+        case DIRECTIVE:
+            p.put('\t').put(i.text);
+            break;
+        case DATA:
+            p.put(i.label).put(':');
+            p.put('\t').put(i.text);
+            if (i.args.length > 0) {
+                p.pad(MAXLEN - i.text.length() + 2);
+                i.args[0].print(p);
+            }
+            if (i.comment != "")
+                p.put("\t# ").put(i.comment);
+            break;
+        default:
+            String opcode = i.op.text();
+            p.put('\t').put(opcode);
+            if (i.args.length > 0) {
+                p.pad(MAXLEN - opcode.length() + 2);
+                for (int k = 0; k < i.args.length; k++) {
+                    if (k > 0) {
+                        p.put(", ");
+                    }
+                    i.args[k].print(p);
+                }
+            }
+            if (i.comment != "")
+                p.put(i.hasMemArg() ? "\t#" : "\t\t#").put(i.comment);
+        }
+        if (i.newline) {
+            p.newline();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+public class Instr {
+    private static final Operand[] NO_ARGS = new Operand[0];
+
+    Opcode op;
+    Operand[] args;
+    String label = "";
+    String text = "";
+    String comment = "";
+    int line;
+    boolean newline = true;
+
+    public Instr(Opcode op, Operand[] args, String comment, int line) {
+        this.op = op;
+        this.args = args == null ? NO_ARGS : args;
+        this.comment = comment;
+        this.line = line;
+    }
+
+    public static Instr label(String label, String comment, int line) {
+        Instr i = new Instr(Opcode.LABEL, null, comment, line);
+        i.label = label;
+        return i;
+    }
+
+    public static Instr comment(String comment, int line) {
+        return new Instr(Opcode.COMMENT, null, comment, line);
+    }
+
+    public static Instr directive(String text, int line) {
+        Instr i = new Instr(Opcode.DIRECTIVE, null, "", line);
+        i.text = text;
+        return i;
+    }
+
+    public static Instr data(String label, String text, String arg, String comment, int line) {
+        Instr i = new Instr(Opcode.DATA, arg == "" ? null : new Operand[] { new LabelRef(arg, false) },
+                            comment, line);
+        i.label = label;
+        i.text = text;
+        return i;
+    }
+
+    public Opcode op() {
+        return op;
+    }
+
+    public Operand arg(int k) {
+        return args[k];
+    }
+
+    public int numArgs() {
+        return args.length;
+    }
+
+    public String label() {
+        return label;
+    }
+
+    public int line() {
+        return line;
+    }
+
+    public boolean isCode() {
+        return !op.isPseudo();
+    }
+
+    public Reg def() {
+        switch (op) {
+        case LI:
+        case LA:
+        case LW:
+        case MOVE:
+        case ADD:
+        case ADDU:
+        case SUB:
+        case SUBU:
+        case XORI:
+        case SLL:
+        case SRA:
+        case SRL:
+        case MFLO:
+        case MFHI:
+            return (Reg) args[0];
+        case JAL:
+            return Reg.RA;
+        case SYSCALL:
+            return Reg.V0;
+        default:
+            return null;
+        }
+    }
+
+    public boolean uses(Reg r) {
+        if (op == Opcode.SYSCALL) {
+            return r == Reg.V0 || r == Reg.A0;
+        }
+        for (int k = def() == null || op == Opcode.JAL ? 0 : 1; k < args.length; k++) {
+            Operand a = args[k];
+            if (a == r || (a instanceof Mem && ((Mem) a).base() == r)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean mentions(Reg r) {
+        if (op == Opcode.JAL || op == Opcode.SYSCALL) {
+            return true;
+        }
+        for (Operand a : args) {
+            if (a == r || (a instanceof Mem && ((Mem) a).base() == r)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean hasMemArg() {
+        for (Operand a : args) {
+            if (a instanceof Mem) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        if (op == Opcode.LABEL) {
+            return label + ":";
+        }
+        sb.append(op.isPseudo() ? text : op.text());
+        for (int k = 0; k < args.length; k++) {
+            sb.append(k == 0 ? " " : ", ").append(args[k]);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,72 @@
+import java.util.*;
+
+// backward dataflow over a function's CFG for a set of frame words, each
+// named by its $fp offset: a word is live at a point when some path from
+// there reads it (lw) before writing it (sw)
+public class Liveness {
+    private final Map<Cfg.Block, Set<Integer>> in = new HashMap<Cfg.Block, Set<Integer>>();
+    private final Map<Cfg.Block, Set<Integer>> out = new HashMap<Cfg.Block, Set<Integer>>();
+
+    private Liveness() {
+    }
+
+    public static Liveness build(Cfg cfg, Set<Integer> slots) {
+        Liveness live = new Liveness();
+        Map<Cfg.Block, Set<Integer>> uses = new HashMap<Cfg.Block, Set<Integer>>();
+        Map<Cfg.Block, Set<Integer>> defs = new HashMap<Cfg.Block, Set<Integer>>();
+        for (Cfg.Block b : cfg.blocks()) {
+            Set<Integer> use = new HashSet<Integer>(), def = new HashSet<Integer>();
+            for (Instr i : b.code) {
+                Integer s = slot(i, slots);
+                if (s == null) {
+                    continue;
+                }
+                if (i.op == Opcode.LW && !def.contains(s)) {
+                    use.add(s);
+                }
+                else if (i.op == Opcode.SW) {
+                    def.add(s);
+                }
+            }
+            uses.put(b, use);
+            defs.put(b, def);
+            live.in.put(b, new HashSet<Integer>(use));
+            live.out.put(b, new HashSet<Integer>());
+        }
+        List<Cfg.Block> order = new ArrayList<Cfg.Block>(cfg.blocks());
+        Collections.reverse(order);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Cfg.Block b : order) {
+                Set<Integer> o = live.out.get(b);
+                for (Cfg.Block s : b.succs) {
+                    o.addAll(live.in.get(s));
+                }
+                for (Integer s : o) {
+                    if (!defs.get(b).contains(s)) {
+                        changed |= live.in.get(b).add(s);
+                    }
+                }
+            }
+        }
+        return live;
+    }
+
+    public Set<Integer> liveIn(Cfg.Block b) {
+        return in.get(b);
+    }
+
+    public Set<Integer> liveOut(Cfg.Block b) {
+        return out.get(b);
+    }
+
+    // the $fp offset i loads or stores when it is one of slots
+    static Integer slot(Instr i, Set<Integer> slots) {
+        if (i.op != Opcode.LW && i.op != Opcode.SW || !(i.args[1] instanceof Mem)) {
+            return null;
+        }
+        Mem m = (Mem) i.args[1];
+        return m.base() == Reg.FP && slots.contains(m.offset()) ? m.offset() : null;
+    }
+}
@@ -0,0 +1,85 @@
+import java.util.*;
+
+public enum Opcode {
+    LI("li"),
+    LA("la"),
+    LW("lw"),
+    SW("sw"),
+    MOVE("move"),
+    ADD("add"),
+    ADDU("addu"),
+    SUB("sub"),
+    SUBU("subu"),
+    XORI("xori"),
+    SLL("sll"),
+    SRA("sra"),
+    SRL("srl"),
+    MULT("mult"),
+    DIV("div"),
+    MFLO("mflo"),
+    MFHI("mfhi"),
+    BEQ("beq"),
+    BNE("bne"),
+    BLTZ("bltz"),
+    BGTZ("bgtz"),
+    BLEZ("blez"),
+    BGEZ("bgez"),
+    J("j"),
+    JAL("jal"),
+    JR("jr"),
+    SYSCALL("syscall"),
+
+    LABEL(""),
+    COMMENT(""),
+    DIRECTIVE(""),
+    DATA("");
+
+    private final String text;
+
+    private static final Map<String, Opcode> byText = new HashMap<String, Opcode>();
+    static {
+        for (Opcode op : values()) {
+            if (op.text.length() > 0) {
+                byText.put(op.text, op);
+            }
+        }
+    }
+
+    Opcode(String text) {
+        this.text = text;
+    }
+
+    public String text() {
+        return text;
+    }
+
+    public boolean isPseudo() {
+        return text.length() == 0;
+    }
+
+    public boolean isBranch() {
+        switch (this) {
+        case BEQ:
+        case BNE:
+        case BLTZ:
+        case BGTZ:
+        case BLEZ:
+        case BGEZ:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    public boolean isJump() {
+        return this == J || this == JR;
+    }
+
+    public static Opcode of(String text) {
+        Opcode op = byText.get(text);
+        if (op == null) {
+            throw new IllegalArgumentException("unknown opcode " + text);
+        }
+        return op;
+    }
+}
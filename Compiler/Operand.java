@@ -0,0 +1,153 @@
+import java.util.*;
+
+abstract public class Operand {
+    abstract public void print(Emitter p);
+
+    public static Operand parse(String text) {
+        if (text.startsWith("$")) {
+            return Reg.get(text);
+        }
+        char c = text.charAt(0);
+        if (Character.isDigit(c) || (c == '-' && text.length() > 1)) {
+            try {
+                return new Imm(Integer.parseInt(text));
+            } catch (NumberFormatException e) {
+            }
+        }
+        return new LabelRef(text, false);
+    }
+}
+
+class Reg extends Operand {
+    private static final Map<String, Reg> regs = new HashMap<String, Reg>();
+
+    public static final Reg ZERO = get("$zero");
+    public static final Reg FP = get(Codegen.FP);
+    public static final Reg SP = get(Codegen.SP);
+    public static final Reg RA = get(Codegen.RA);
+    public static final Reg V0 = get(Codegen.V0);
+    public static final Reg A0 = get(Codegen.A0);
+    public static final Reg T0 = get(Codegen.T0);
+    public static final Reg T1 = get(Codegen.T1);
+
+    private final String name;
+
+    private Reg(String name) {
+        this.name = name;
+    }
+
+    public static synchronized Reg get(String name) {
+        Reg r = regs.get(name);
+        if (r == null) {
+            r = new Reg(name);
+            regs.put(name, r);
+        }
+        return r;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public boolean isTemp() {
+        return name.startsWith("$t");
+    }
+
+    public void print(Emitter p) {
+        p.put(name);
+    }
+
+    public String toString() {
+        return name;
+    }
+}
+
+class Imm extends Operand {
+    private final int value;
+
+    public Imm(int value) {
+        this.value = value;
+    }
+
+    public int value() {
+        return value;
+    }
+
+    public void print(Emitter p) {
+        p.put(value);
+    }
+
+    public String toString() {
+        return Integer.toString(value);
+    }
+}
+
+class Mem extends Operand {
+    private final Reg base;
+    private final int offset;
+    private final boolean indirect;
+
+    public Mem(Reg base, int offset) {
+        this.base = base;
+        this.offset = offset;
+        this.indirect = false;
+    }
+
+    public Mem(Reg base) {
+        this.base = base;
+        this.offset = 0;
+        this.indirect = true;
+    }
+
+    public Reg base() {
+        return base;
+    }
+
+    public int offset() {
+        return offset;
+    }
+
+    public boolean isIndirect() {
+        return indirect;
+    }
+
+    public void print(Emitter p) {
+        if (!indirect) {
+            p.put(offset);
+        }
+        p.put('(').put(base.name()).put(')');
+    }
+
+    public String toString() {
+        return (indirect ? "" : Integer.toString(offset)) + "(" + base + ")";
+    }
+}
+
+class LabelRef extends Operand {
+    private final String name;
+    private final boolean global;
+
+    public LabelRef(String name, boolean global) {
+        this.name = name;
+        this.global = global;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public boolean isGlobal() {
+        return global;
+    }
+
+    public void print(Emitter p) {
+        if (global) {
+            p.put('.');
+        }
+        p.put(name);
+    }
+
+    public String toString() {
+        return global ? "." + name : name;
+    }
+}
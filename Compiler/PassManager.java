@@ -0,0 +1,178 @@
+import java.util.*;
+
+// the named optimization passes and the pipelines -O0, -O1, -O2, -Os and
+// --passes= build from them.  Program passes rewrite the AST between type
+// checking and code generation, codegen passes switch on a way of
+// generating code, and function passes rewrite each function's lowered
+// code before it is printed.  A pass brings the passes it requires into
+// any pipeline that names it, and when a function pass changes the code,
+// the passes it invalidates run again and the cached CFG is rebuilt
+public class PassManager {
+    static final int PROGRAM = 0;
+    static final int CODEGEN = 1;
+    static final int FUNCTION = 2;
+
+    static class Pass {
+        final String name;
+        final int kind;
+        final String[] requires;
+        final String[] invalidates;
+
+        Pass(String name, int kind, String requires, String invalidates) {
+            this.name = name;
+            this.kind = kind;
+            this.requires = names(requires);
+            this.invalidates = names(invalidates);
+        }
+
+        private static String[] names(String list) {
+            return list.isEmpty() ? new String[0] : list.split(" ");
+        }
+    }
+
+    private static final Map<String, Pass> PASSES = new LinkedHashMap<String, Pass>();
+
+    private static void define(String name, int kind, String requires, String invalidates) {
+        PASSES.put(name, new Pass(name, kind, requires, invalidates));
+    }
+
+    static {
+        define("fold", PROGRAM, "", "");
+        define("prune", PROGRAM, "fold", "");
+        define("dce", PROGRAM, "", "");
+        define("strings", PROGRAM, "", "");
+        define("registers", CODEGEN, "", "");
+        define("inline", CODEGEN, "registers", "");
+        define("tail-calls", CODEGEN, "registers", "");
+        define("rotate-loops", CODEGEN, "registers", "");
+        define("peephole", FUNCTION, "registers", "");
+        define("sccp", FUNCTION, "registers", "peephole");
+        define("regalloc", FUNCTION, "registers", "peephole");
+    }
+
+    private static final String O1 =
+        "fold prune dce strings registers inline tail-calls rotate-loops peephole sccp regalloc";
+    // inlining and loop rotation both copy code
+    private static final String OS =
+        "fold prune dce strings registers tail-calls peephole sccp regalloc";
+
+    // the passes options select, in the order they run
+    public static List<String> pipeline(CompilerOptions options) {
+        List<String> names;
+        if (options.passList != null) {
+            names = options.passList;
+        }
+        else if (options.optLevel == 0) {
+            names = Collections.emptyList();
+        }
+        else {
+            names = Arrays.asList((options.optSize ? OS : O1).split(" "));
+        }
+        List<String> pipeline = new ArrayList<String>();
+        for (String name : names) {
+            add(pipeline, name, options.disabled);
+        }
+        return pipeline;
+    }
+
+    private static void add(List<String> pipeline, String name, Set<String> disabled) {
+        Pass pass = PASSES.get(name);
+        if (pass == null) {
+            throw new IllegalArgumentException("unknown pass " + name);
+        }
+        if (disabled.contains(name)) {
+            return;
+        }
+        for (String required : pass.requires) {
+            if (!pipeline.contains(required)) {
+                add(pipeline, required, disabled);
+            }
+        }
+        // a function pass may be listed more than once
+        if (pass.kind == FUNCTION || !pipeline.contains(name)) {
+            pipeline.add(name);
+        }
+    }
+
+    // the program passes, each timed as a phase of its own
+    public static void runProgram(ProgramNode root) {
+        CompileContext context = CompileContext.get();
+        for (String name : context.options.pipeline()) {
+            if (PASSES.get(name).kind != PROGRAM) {
+                continue;
+            }
+            long start = System.nanoTime();
+            context.stats.beginPhase(name);
+            if (name.equals("fold")) {
+                root.fold();
+            }
+            else if (name.equals("prune")) {
+                root.prune();
+            }
+            else if (name.equals("dce")) {
+                root.removeUnreachable();
+            }
+            else {
+                root.internStrings();
+            }
+            context.stats.endPhase();
+            context.stats.timePass(name, System.nanoTime() - start);
+        }
+    }
+
+    private final CompileContext context;
+    private Cfg cfg = null;
+
+    private PassManager(CompileContext context) {
+        this.context = context;
+    }
+
+    // the function passes over the code of the function just generated;
+    // returns the manager so the CFG it holds can be reused
+    public static PassManager runFunction(CompileContext context) {
+        PassManager pm = new PassManager(context);
+        CompilerOptions options = context.options;
+        if (options.dumpSsa && !options.enabled("sccp")) {
+            Sccp.run(pm.cfg(), context.code, context.ssaDump, false);
+        }
+        for (String name : options.pipeline()) {
+            if (PASSES.get(name).kind == FUNCTION) {
+                pm.run(name);
+            }
+        }
+        return pm;
+    }
+
+    public Cfg cfg() {
+        if (cfg == null) {
+            cfg = Cfg.build(context.function, context.code);
+        }
+        return cfg;
+    }
+
+    private void run(String name) {
+        long start = System.nanoTime();
+        int changes;
+        if (name.equals("peephole")) {
+            changes = Peephole.run(context.code);
+            context.stats.count("peepholeRemoved", changes);
+        }
+        else if (name.equals("sccp")) {
+            StringBuilder dump = context.options.dumpSsa ? context.ssaDump : null;
+            changes = Sccp.run(cfg(), context.code, dump, true);
+        }
+        else {
+            changes = RegAlloc.run(cfg(), context.code, context.prologue, context.epilogues);
+        }
+        context.stats.timePass(name, System.nanoTime() - start);
+        if (changes == 0) {
+            return;
+        }
+        cfg = null;
+        for (String again : PASSES.get(name).invalidates) {
+            if (context.options.enabled(again)) {
+                run(again);
+            }
+        }
+    }
+}
@@ -0,0 +1,376 @@
+import java.util.*;
+
+public class Peephole {
+    private static final int MAX_SCAN = 512;
+
+    private List<Instr> code;
+    private Map<String, Integer> labels = new HashMap<String, Integer>();
+
+    private Peephole(List<Instr> code) {
+        this.code = code;
+    }
+
+    public static int run(List<Instr> code) {
+        int before = code.size();
+        Peephole p = new Peephole(code);
+        boolean changed;
+        do {
+            while (p.round()) {
+            }
+            changed = p.foldStackAdjustments();
+            p.compact();
+        } while (changed);
+        return before - code.size();
+    }
+
+    private boolean round() {
+        compact();
+        labels.clear();
+        for (int i = 0; i < code.size(); i++) {
+            if (code.get(i).op == Opcode.LABEL) {
+                labels.put(code.get(i).label, i);
+            }
+        }
+        boolean changed = false;
+        for (int i = 0; i < code.size(); i++) {
+            changed |= collapsePushPop(i);
+        }
+        for (int i = 0; i < code.size(); i++) {
+            changed |= removeSelfMove(i) || removeDeadDef(i) || renameThroughMove(i) || useZero(i)
+                || removeJumpToNext(i);
+        }
+        return changed;
+    }
+
+    private void compact() {
+        int k = 0;
+        for (int i = 0; i < code.size(); i++) {
+            if (code.get(i) != null) {
+                code.set(k++, code.get(i));
+            }
+        }
+        code.subList(k, code.size()).clear();
+    }
+
+    private Instr at(int i) {
+        return i >= 0 && i < code.size() ? code.get(i) : null;
+    }
+
+    private static boolean transparent(Instr i) {
+        return i.op == Opcode.COMMENT || i.op == Opcode.DIRECTIVE || i.op == Opcode.DATA;
+    }
+
+    private int next(int i) {
+        for (i++; i < code.size(); i++) {
+            Instr in = code.get(i);
+            if (in != null && !transparent(in)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int prev(int i) {
+        for (i--; i >= 0; i--) {
+            Instr in = code.get(i);
+            if (in != null && !transparent(in)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isSpAdjust(Instr i) {
+        return i != null && (i.op == Opcode.ADDU || i.op == Opcode.SUBU) && i.args.length == 3
+            && i.args[0] == Reg.SP && i.args[1] == Reg.SP && i.args[2] instanceof Imm;
+    }
+
+    private static int spDelta(Instr i) {
+        int k = ((Imm) i.args[2]).value();
+        return i.op == Opcode.ADDU ? k : -k;
+    }
+
+    private static boolean isSpAccess(Instr i, Opcode op, int offset) {
+        if (i == null || i.op != op || !(i.args[0] instanceof Reg)) {
+            return false;
+        }
+        Operand m = i.args[1];
+        return m instanceof Mem && ((Mem) m).base() == Reg.SP && !((Mem) m).isIndirect()
+            && ((Mem) m).offset() == offset;
+    }
+
+    private static boolean straightLine(Instr i) {
+        return i.isCode() && !i.op.isBranch() && !i.op.isJump() && i.op != Opcode.JAL;
+    }
+
+    private static Instr move(Reg to, Reg from, int line) {
+        return new Instr(Opcode.MOVE, new Operand[] { to, from }, "", line);
+    }
+
+    // sw r, 0($sp); subu $sp, $sp, 4; ... lw s, 4($sp); addu $sp, $sp, 4  =>  move s, r
+    private boolean collapsePushPop(int pop) {
+        Instr load = at(pop);
+        int popAdjust = next(pop);
+        if (!isSpAccess(load, Opcode.LW, 4) || !isSpAdjust(at(popAdjust)) || spDelta(at(popAdjust)) != 4) {
+            return false;
+        }
+        Reg s = (Reg) load.args[0];
+        int k = prev(pop);
+        boolean defsR = false, touchesS = false;
+        List<Integer> between = new ArrayList<Integer>();
+        while (k >= 0 && !isSpAdjust(at(k))) {
+            Instr x = at(k);
+            if (!straightLine(x) || x.mentions(Reg.SP)) {
+                return false;
+            }
+            between.add(k);
+            k = prev(k);
+        }
+        int push = prev(k);
+        if (k < 0 || spDelta(at(k)) != -4 || !isSpAccess(at(push), Opcode.SW, 0)) {
+            return false;
+        }
+        Reg r = (Reg) at(push).args[0];
+        for (int x : between) {
+            defsR |= at(x).def() == r;
+            touchesS |= at(x).mentions(s);
+        }
+        int line = load.line;
+        if (!defsR) {
+            code.set(pop, r == s ? null : move(s, r, line));
+            code.set(push, null);
+        }
+        else if (!touchesS) {
+            code.set(push, move(s, r, at(push).line));
+            code.set(pop, null);
+        }
+        else {
+            return false;
+        }
+        code.set(k, null);
+        code.set(popAdjust, null);
+        return true;
+    }
+
+    private boolean removeSelfMove(int i) {
+        Instr in = at(i);
+        if (in != null && in.op == Opcode.MOVE && in.args[0] == in.args[1]) {
+            code.set(i, null);
+            return true;
+        }
+        return false;
+    }
+
+    // a temporary written and never read, such as the argument pops after jal
+    private boolean removeDeadDef(int i) {
+        Instr in = at(i);
+        if (in == null || !in.isCode() || in.op == Opcode.JAL || in.op == Opcode.SYSCALL) {
+            return false;
+        }
+        Reg d = in.def();
+        if (d == null || !d.isTemp() || live(i + 1, d)) {
+            return false;
+        }
+        code.set(i, null);
+        return true;
+    }
+
+    // op d, ...; move s, d  =>  op s, ...  when d is dead afterwards
+    private boolean renameThroughMove(int i) {
+        Instr in = at(i);
+        if (in == null || !in.isCode() || in.op == Opcode.JAL || in.op == Opcode.SYSCALL) {
+            return false;
+        }
+        Reg d = in.def();
+        int j = next(i);
+        Instr mv = at(j);
+        if (d == null || !d.isTemp() || mv == null || mv.op != Opcode.MOVE || mv.args[1] != d
+            || mv.args[0] == d || live(j + 1, d)) {
+            return false;
+        }
+        in.args[0] = mv.args[0];
+        code.set(j, null);
+        return true;
+    }
+
+    // li r, 0; op ..., r, ...  =>  op ..., $zero, ...
+    private boolean useZero(int i) {
+        Instr li = at(i);
+        if (li == null || li.op != Opcode.LI || !(li.args[1] instanceof Imm)
+            || ((Imm) li.args[1]).value() != 0 || !((Reg) li.args[0]).isTemp()) {
+            return false;
+        }
+        Reg r = (Reg) li.args[0];
+        int j = nextCode(i);
+        Instr user = at(j);
+        if (user == null || !user.isCode() || user.op == Opcode.SYSCALL || user.op == Opcode.JAL
+            || !user.uses(r) || (user.def() != r && liveAfter(j, r))) {
+            return false;
+        }
+        int first = user.def() == null ? 0 : 1;
+        for (int k = first; k < user.args.length; k++) {
+            if (user.args[k] instanceof Mem && ((Mem) user.args[k]).base() == r) {
+                return false;
+            }
+        }
+        for (int k = first; k < user.args.length; k++) {
+            if (user.args[k] == r) {
+                user.args[k] = Reg.ZERO;
+            }
+        }
+        code.set(i, null);
+        return true;
+    }
+
+    // j L; L:  =>  L:
+    private boolean removeJumpToNext(int i) {
+        Instr j = at(i);
+        if (j == null || j.op != Opcode.J || !(j.args[0] instanceof LabelRef)) {
+            return false;
+        }
+        String target = ((LabelRef) j.args[0]).name();
+        for (int k = i + 1; k < code.size(); k++) {
+            Instr in = code.get(k);
+            if (in == null || transparent(in)) {
+                continue;
+            }
+            if (in.op != Opcode.LABEL) {
+                return false;
+            }
+            if (in.label.equals(target)) {
+                code.set(i, null);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // addu/subu $sp are pushed forward over accesses relative to $sp, which
+    // get rebased, until they meet and merge with the next adjustment
+    private boolean foldStackAdjustments() {
+        boolean changed = false;
+        for (int i = 0; i < code.size(); i++) {
+            Instr adj = at(i);
+            if (!isSpAdjust(adj)) {
+                continue;
+            }
+            int k = next(i);
+            while (k >= 0 && !isSpAdjust(at(k)) && movable(at(k))) {
+                k = next(k);
+            }
+            if (k < 0 || !isSpAdjust(at(k))) {
+                continue;
+            }
+            int delta = spDelta(adj);
+            for (int x = i + 1; x < k; x++) {
+                Instr in = at(x);
+                if (in != null && in.isCode()) {
+                    rebase(in, delta);
+                }
+            }
+            int total = delta + spDelta(at(k));
+            code.set(i, null);
+            code.set(k, total == 0 ? null : spAdjust(total, at(k).line));
+            changed = true;
+        }
+        return changed;
+    }
+
+    private static boolean movable(Instr i) {
+        if (i == null || !straightLine(i) || i.def() == Reg.SP) {
+            return false;
+        }
+        for (Operand a : i.args) {
+            if (a == Reg.SP || (a instanceof Mem && ((Mem) a).base() == Reg.SP && ((Mem) a).isIndirect())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void rebase(Instr i, int delta) {
+        for (int k = 0; k < i.args.length; k++) {
+            Operand a = i.args[k];
+            if (a instanceof Mem && ((Mem) a).base() == Reg.SP) {
+                i.args[k] = new Mem(Reg.SP, ((Mem) a).offset() + delta);
+            }
+        }
+    }
+
+    private static Instr spAdjust(int delta, int line) {
+        return new Instr(delta > 0 ? Opcode.ADDU : Opcode.SUBU,
+                         new Operand[] { Reg.SP, Reg.SP, new Imm(Math.abs(delta)) }, "", line);
+    }
+
+    private int nextCode(int i) {
+        int j = next(i);
+        return j >= 0 && code.get(j).op != Opcode.LABEL ? j : -1;
+    }
+
+    private boolean liveAfter(int i, Reg r) {
+        Instr in = code.get(i);
+        if (in.op.isBranch()) {
+            return live(i + 1, r) || live(target(in), r);
+        }
+        if (in.op == Opcode.J) {
+            return live(target(in), r);
+        }
+        if (in.op == Opcode.JR || in.op == Opcode.JAL) {
+            return !r.isTemp();
+        }
+        return live(i + 1, r);
+    }
+
+    private int target(Instr branch) {
+        Operand l = branch.args[branch.args.length - 1];
+        Integer at = l instanceof LabelRef ? labels.get(((LabelRef) l).name()) : null;
+        return at == null ? -1 : at;
+    }
+
+    // whether r may be read before being written on some path from start;
+    // temporaries are never live across jal or jr
+    private boolean live(int start, Reg r) {
+        if (!r.isTemp() || start < 0) {
+            return true;
+        }
+        Deque<Integer> work = new ArrayDeque<Integer>();
+        Set<Integer> seen = new HashSet<Integer>();
+        work.push(start);
+        int steps = 0;
+        while (!work.isEmpty()) {
+            int i = work.pop();
+            while (i < code.size()) {
+                if (++steps > MAX_SCAN) {
+                    return true;
+                }
+                if (!seen.add(i)) {
+                    break;
+                }
+                Instr in = code.get(i);
+                if (in == null || !in.isCode()) {
+                    i++;
+                    continue;
+                }
+                if (in.uses(r)) {
+                    return true;
+                }
+                if (in.def() == r || in.op == Opcode.JR || in.op == Opcode.JAL) {
+                    break;
+                }
+                if (in.op.isBranch() || in.op == Opcode.J) {
+                    int t = target(in);
+                    if (t < 0) {
+                        return true;
+                    }
+                    if (in.op == Opcode.J) {
+                        i = t;
+                        continue;
+                    }
+                    work.push(t);
+                }
+                i++;
+            }
+        }
+        return false;
+    }
+}
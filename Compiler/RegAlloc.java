@@ -0,0 +1,309 @@
+import java.util.*;
+
+// linear-scan register allocation (Poletto and Sarkar) of the frame words
+// that hold scalar locals and parameters: each word gets one interval over
+// the function's instructions in layout order, widened to every block it is
+// live through, and the intervals are handed a temporary the function never
+// mentions when no call falls inside them, else one of $s0-$s7; when none
+// is free the interval ending last stays in memory.  Loads and stores of an
+// allocated word become moves, and the $s registers a function takes are
+// saved below its frame after the prologue and restored before each
+// epilogue
+public class RegAlloc {
+    private static final String[] SAVED = {
+        "$s0", "$s1", "$s2", "$s3", "$s4", "$s5", "$s6", "$s7"
+    };
+    private static final String[] TEMPS = {
+        "$t0", "$t1", "$t2", "$t3", "$t4", "$t5", "$t6", "$t7", "$t8", "$t9"
+    };
+
+    static class Interval {
+        final int slot;
+        int start = Integer.MAX_VALUE;
+        int end = -1;
+        boolean call = false;
+        Reg reg = null;
+
+        Interval(int slot) {
+            this.slot = slot;
+        }
+
+        void cover(int pos) {
+            start = Math.min(start, pos);
+            end = Math.max(end, pos);
+        }
+    }
+
+    // returns the number of loads and stores turned into moves
+    public static int run(Cfg cfg, List<Instr> code, Instr prologue, List<Instr> epilogues) {
+        if (indexOf(code, prologue) < 0) {
+            return 0;
+        }
+        Set<Integer> slots = candidates(code);
+        if (slots.isEmpty()) {
+            return 0;
+        }
+        Liveness live = Liveness.build(cfg, slots);
+        Map<Integer, Interval> intervals = intervals(cfg, code, live, slots);
+        int spilled = scan(code, intervals);
+
+        // every load and store becomes a move before any load is forwarded,
+        // so forwarding sees the stores that overwrite the register
+        int moved = 0;
+        List<Integer> loads = new ArrayList<Integer>();
+        for (int k = 0; k < code.size(); k++) {
+            Instr i = code.get(k);
+            Integer s = Liveness.slot(i, slots);
+            if (s == null || intervals.get(s).reg == null) {
+                continue;
+            }
+            Reg r = intervals.get(s).reg;
+            Reg x = (Reg) i.args[0];
+            if (i.op == Opcode.LW) {
+                i.args = new Operand[] { x, r };
+                loads.add(k);
+            }
+            else {
+                i.args = new Operand[] { r, x };
+            }
+            i.op = Opcode.MOVE;
+            moved++;
+        }
+        for (int k : loads) {
+            Instr i = code.get(k);
+            forward(code, k, (Reg) i.args[0], (Reg) i.args[1]);
+        }
+
+        List<Reg> saved = new ArrayList<Reg>();
+        for (String name : SAVED) {
+            for (Interval i : intervals.values()) {
+                if (i.reg == Reg.get(name) && !cfg.function().equals("main") && !saved.contains(i.reg)) {
+                    saved.add(i.reg);
+                }
+            }
+        }
+        int base = lowest(code);
+        int line = prologue.line;
+        List<Instr> entry = new ArrayList<Instr>();
+        if (!saved.isEmpty()) {
+            entry.add(new Instr(Opcode.SUBU, new Operand[] { Reg.SP, Reg.SP, new Imm(4 * saved.size()) },
+                                "", line));
+        }
+        for (int k = 0; k < saved.size(); k++) {
+            entry.add(access(Opcode.SW, saved.get(k), base - 4 * (k + 1), "save " + saved.get(k), line));
+        }
+        for (Integer s : live.liveIn(cfg.entry())) {
+            Interval i = intervals.get(s);
+            if (i.reg != null) {
+                entry.add(access(Opcode.LW, i.reg, s, "", line));
+            }
+        }
+        code.addAll(indexOf(code, prologue) + 1, entry);
+        for (Instr e : epilogues) {
+            int at = indexOf(code, e);
+            for (int k = 0; at >= 0 && k < saved.size(); k++) {
+                code.add(at++, access(Opcode.LW, saved.get(k), base - 4 * (k + 1),
+                                      "restore " + saved.get(k), e.line));
+            }
+        }
+
+        CompileStats stats = CompileStats.get();
+        stats.count("regAllocated", intervals.size() - spilled);
+        stats.count("regSpilled", spilled);
+        stats.count("regSaved", saved.size());
+        return moved;
+    }
+
+    private static int indexOf(List<Instr> code, Instr i) {
+        for (int k = 0; i != null && k < code.size(); k++) {
+            if (code.get(k) == i) {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    private static Instr access(Opcode op, Reg r, int offset, String comment, int line) {
+        return new Instr(op, new Operand[] { r, new Mem(Reg.FP, offset) }, comment, line);
+    }
+
+    // words of the frame only read and written by plain lw and sw, provided
+    // no address of the frame escapes into a register; the return address
+    // and saved $fp stay put, and so do the parameters when a tail call
+    // hands its arguments over through them
+    private static Set<Integer> candidates(List<Instr> code) {
+        Set<String> labels = new HashSet<String>();
+        for (Instr i : code) {
+            if (i.op == Opcode.LABEL) {
+                labels.add(i.label);
+            }
+        }
+        TreeSet<Integer> slots = new TreeSet<Integer>();
+        Set<Integer> fixed = new HashSet<Integer>();
+        boolean tailCall = false;
+        for (Instr i : code) {
+            if (i.op == Opcode.J && i.args[0] instanceof LabelRef
+                && !labels.contains(((LabelRef) i.args[0]).name())) {
+                tailCall = true;
+            }
+            for (Operand a : i.args) {
+                if (!(a instanceof Mem)) {
+                    continue;
+                }
+                Reg base = ((Mem) a).base();
+                if (base != Reg.FP && base != Reg.SP && base != Reg.get(Codegen.GP)) {
+                    return Collections.emptySet();
+                }
+                if (base == Reg.FP) {
+                    boolean plain = (i.op == Opcode.LW || i.op == Opcode.SW) && !((Mem) a).isIndirect();
+                    (plain ? slots : fixed).add(((Mem) a).offset());
+                }
+            }
+        }
+        slots.removeAll(fixed);
+        slots.remove(0);
+        slots.remove(-4);
+        return tailCall ? slots.headSet(0) : slots;
+    }
+
+    // one interval per word, from its first to its last point of interest
+    private static Map<Integer, Interval> intervals(Cfg cfg, List<Instr> code, Liveness live,
+                                                    Set<Integer> slots) {
+        Map<Instr, Integer> pos = new IdentityHashMap<Instr, Integer>();
+        List<Integer> calls = new ArrayList<Integer>();
+        for (int k = 0; k < code.size(); k++) {
+            pos.put(code.get(k), k);
+            if (code.get(k).op == Opcode.JAL) {
+                calls.add(k);
+            }
+        }
+        Map<Integer, Interval> intervals = new TreeMap<Integer, Interval>();
+        for (Integer s : slots) {
+            intervals.put(s, new Interval(s));
+        }
+        for (Cfg.Block b : cfg.blocks()) {
+            if (b.code.isEmpty()) {
+                continue;
+            }
+            int first = pos.get(b.code.get(0)), last = pos.get(b.code.get(b.code.size() - 1));
+            for (Integer s : live.liveIn(b)) {
+                intervals.get(s).cover(first);
+            }
+            for (Integer s : live.liveOut(b)) {
+                intervals.get(s).cover(last);
+            }
+            for (Instr i : b.code) {
+                Integer s = Liveness.slot(i, slots);
+                if (s != null) {
+                    intervals.get(s).cover(pos.get(i));
+                }
+            }
+        }
+        for (Interval i : intervals.values()) {
+            for (int c : calls) {
+                i.call |= c >= i.start && c <= i.end;
+            }
+        }
+        return intervals;
+    }
+
+    // returns the number of intervals left in memory
+    private static int scan(List<Instr> code, Map<Integer, Interval> intervals) {
+        Deque<Reg> temps = new ArrayDeque<Reg>(), saved = new ArrayDeque<Reg>();
+        for (String name : TEMPS) {
+            if (!mentioned(code, Reg.get(name))) {
+                temps.add(Reg.get(name));
+            }
+        }
+        for (String name : SAVED) {
+            saved.add(Reg.get(name));
+        }
+        List<Interval> order = new ArrayList<Interval>(intervals.values());
+        Collections.sort(order, new Comparator<Interval>() {
+            public int compare(Interval a, Interval b) {
+                return a.start - b.start;
+            }
+        });
+        List<Interval> active = new ArrayList<Interval>();
+        int spilled = 0;
+        for (Interval i : order) {
+            for (Iterator<Interval> it = active.iterator(); it.hasNext(); ) {
+                Interval a = it.next();
+                if (a.end < i.start) {
+                    (a.reg.isTemp() ? temps : saved).add(a.reg);
+                    it.remove();
+                }
+            }
+            Reg r = !i.call && !temps.isEmpty() ? temps.poll() : saved.poll();
+            if (r == null) {
+                Interval victim = null;
+                for (Interval a : active) {
+                    if (a.end > i.end && (!i.call || !a.reg.isTemp())
+                        && (victim == null || a.end > victim.end)) {
+                        victim = a;
+                    }
+                }
+                spilled++;
+                if (victim == null) {
+                    continue;
+                }
+                r = victim.reg;
+                victim.reg = null;
+                active.remove(victim);
+            }
+            i.reg = r;
+            active.add(i);
+        }
+        return spilled;
+    }
+
+    private static boolean mentioned(List<Instr> code, Reg r) {
+        for (Instr i : code) {
+            for (Operand a : i.args) {
+                if (a == r || (a instanceof Mem && ((Mem) a).base() == r)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // below everything the code addresses from $fp, where the saved
+    // registers go
+    private static int lowest(List<Instr> code) {
+        int low = -4;
+        for (Instr i : code) {
+            for (Operand a : i.args) {
+                if (a instanceof Mem && ((Mem) a).base() == Reg.FP) {
+                    low = Math.min(low, ((Mem) a).offset());
+                }
+            }
+        }
+        return low;
+    }
+
+    // move t, r from a load: the reads of t that follow in the same block
+    // read r instead, which usually leaves the move dead
+    private static void forward(List<Instr> code, int at, Reg t, Reg r) {
+        if (!t.isTemp()) {
+            return;
+        }
+        for (int k = at + 1; k < code.size(); k++) {
+            Instr i = code.get(k);
+            if (i.op == Opcode.LABEL || i.op == Opcode.JAL) {
+                return;
+            }
+            if (!i.isCode()) {
+                continue;
+            }
+            for (int j = i.def() == null ? 0 : 1; j < i.args.length; j++) {
+                if (i.args[j] == t) {
+                    i.args[j] = r;
+                }
+            }
+            if (i.def() == t || i.def() == r || i.op.isBranch() || i.op.isJump()) {
+                return;
+            }
+        }
+    }
+}
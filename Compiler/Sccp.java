@@ -0,0 +1,339 @@
+import java.util.*;
+
+// sparse conditional constant propagation (Wegman and Zadeck) over the SSA
+// form of one function: values start unknown and only move down to a
+// constant or to varying, and a block is only looked at once an edge into
+// it is known to be taken; afterwards constant results become li, constant
+// operands become immediates, one-way branches become j or disappear and
+// blocks never reached are dropped
+public class Sccp {
+    private final Ssa ssa;
+    private final Set<Cfg.Block> executable = new HashSet<Cfg.Block>();
+    private final Map<Cfg.Block, Set<Cfg.Block>> edges = new HashMap<Cfg.Block, Set<Cfg.Block>>();
+    private final Deque<Cfg.Block[]> flowWork = new ArrayDeque<Cfg.Block[]>();
+    private final Deque<Ssa.Value> ssaWork = new ArrayDeque<Ssa.Value>();
+
+    private Sccp(Ssa ssa) {
+        this.ssa = ssa;
+    }
+
+    // returns the number of instructions changed or removed; without
+    // rewrite it only fills in the dump
+    public static int run(Cfg cfg, List<Instr> code, StringBuilder dump, boolean rewrite) {
+        Sccp sccp = new Sccp(Ssa.build(cfg));
+        sccp.propagate();
+        if (dump != null) {
+            sccp.ssa.print(dump, sccp.executable);
+        }
+        return rewrite ? sccp.rewrite(code) : 0;
+    }
+
+    private void propagate() {
+        flowWork.add(new Cfg.Block[] { null, ssa.cfg.entry() });
+        while (!flowWork.isEmpty() || !ssaWork.isEmpty()) {
+            while (!flowWork.isEmpty()) {
+                Cfg.Block[] edge = flowWork.pop();
+                Cfg.Block b = edge[1];
+                if (edge[0] != null && !edgesFrom(edge[0]).add(b)) {
+                    continue;
+                }
+                for (Ssa.Phi phi : ssa.phisOf(b)) {
+                    visit(phi);
+                }
+                if (executable.add(b)) {
+                    for (Ssa.Node node : ssa.nodesOf(b)) {
+                        visit(node);
+                    }
+                    Instr last = b.last();
+                    if (b.next != null && (last == null || !last.op.isBranch() && !last.op.isJump())) {
+                        flowWork.add(new Cfg.Block[] { b, b.next });
+                    }
+                }
+            }
+            while (!ssaWork.isEmpty()) {
+                for (Object user : ssaWork.pop().users) {
+                    if (user instanceof Ssa.Phi) {
+                        if (executable.contains(((Ssa.Phi) user).block)) {
+                            visit((Ssa.Phi) user);
+                        }
+                    }
+                    else if (executable.contains(((Ssa.Node) user).block)) {
+                        visit((Ssa.Node) user);
+                    }
+                }
+            }
+        }
+    }
+
+    private Set<Cfg.Block> edgesFrom(Cfg.Block b) {
+        Set<Cfg.Block> set = edges.get(b);
+        if (set == null) {
+            set = new HashSet<Cfg.Block>();
+            edges.put(b, set);
+        }
+        return set;
+    }
+
+    private boolean taken(Cfg.Block from, Cfg.Block to) {
+        return edges.containsKey(from) && edges.get(from).contains(to);
+    }
+
+    private void lower(Ssa.Value v, int state, int constant) {
+        if (v.state == Ssa.BOTTOM || state == Ssa.TOP) {
+            return;
+        }
+        if (v.state == Ssa.CONST && (state == Ssa.BOTTOM || constant != v.constant)) {
+            v.state = Ssa.BOTTOM;
+        }
+        else if (v.state == Ssa.TOP) {
+            v.state = state;
+            v.constant = constant;
+        }
+        else {
+            return;
+        }
+        ssaWork.add(v);
+    }
+
+    private void visit(Ssa.Phi phi) {
+        for (int k = 0; k < phi.args.length; k++) {
+            Ssa.Value arg = phi.args[k];
+            if (arg != null && taken(phi.block.preds.get(k), phi.block)) {
+                lower(phi.result, arg.state, arg.constant);
+            }
+        }
+    }
+
+    // the lattice value of an operand: a state and, for CONST, its value
+    private int[] value(Ssa.Node node, Operand a) {
+        if (a == Reg.ZERO) {
+            return new int[] { Ssa.CONST, 0 };
+        }
+        if (a instanceof Imm) {
+            return new int[] { Ssa.CONST, ((Imm) a).value() };
+        }
+        Ssa.Value v = null;
+        if (Ssa.tracked(a)) {
+            v = node.use(((Reg) a).name());
+        }
+        else if (ssa.slot(a) != null) {
+            v = node.use(ssa.slot(a));
+        }
+        return v == null ? new int[] { Ssa.BOTTOM, 0 } : new int[] { v.state, v.constant };
+    }
+
+    private void visit(Ssa.Node node) {
+        Instr i = node.instr;
+        if (i.op.isBranch()) {
+            branch(node);
+            return;
+        }
+        if (i.op == Opcode.J) {
+            if (node.block.taken != null) {
+                flowWork.add(new Cfg.Block[] { node.block, node.block.taken });
+            }
+            return;
+        }
+        Ssa.Value def = node.def();
+        if (def == null || i.op == Opcode.JAL) {
+            return;
+        }
+        int[] r = evaluate(node);
+        lower(def, r[0], r[1]);
+    }
+
+    private int[] evaluate(Ssa.Node node) {
+        Instr i = node.instr;
+        switch (i.op) {
+        case LI:
+            return value(node, i.args[1]);
+        case MOVE:
+            return value(node, i.args[1]);
+        case SW:
+            return value(node, i.args[0]);
+        case LW:
+            return value(node, i.args[1]);
+        case ADD:
+        case ADDU:
+        case SUB:
+        case SUBU:
+        case XORI:
+        case SLL:
+        case SRA:
+        case SRL:
+            int[] a = value(node, i.args[1]);
+            int[] b = value(node, i.args[2]);
+            if (a[0] == Ssa.BOTTOM || b[0] == Ssa.BOTTOM) {
+                return new int[] { Ssa.BOTTOM, 0 };
+            }
+            if (a[0] == Ssa.TOP || b[0] == Ssa.TOP) {
+                return new int[] { Ssa.TOP, 0 };
+            }
+            return new int[] { Ssa.CONST, apply(i.op, a[1], b[1]) };
+        default:
+            return new int[] { Ssa.BOTTOM, 0 };
+        }
+    }
+
+    private static int apply(Opcode op, int a, int b) {
+        switch (op) {
+        case ADD:
+        case ADDU:
+            return a + b;
+        case SUB:
+        case SUBU:
+            return a - b;
+        case XORI:
+            return a ^ b;
+        case SLL:
+            return a << b;
+        case SRA:
+            return a >> b;
+        default:
+            return a >>> b;
+        }
+    }
+
+    // whether the branch is taken, or null while its operands are unknown
+    // or varying
+    private Boolean decide(Ssa.Node node) {
+        Instr i = node.instr;
+        int[] a = value(node, i.args[0]);
+        int[] b = i.args.length == 3 ? value(node, i.args[1]) : new int[] { Ssa.CONST, 0 };
+        if (a[0] != Ssa.CONST || b[0] != Ssa.CONST) {
+            return null;
+        }
+        switch (i.op) {
+        case BEQ:
+            return a[1] == b[1];
+        case BNE:
+            return a[1] != b[1];
+        case BLTZ:
+            return a[1] < 0;
+        case BGTZ:
+            return a[1] > 0;
+        case BLEZ:
+            return a[1] <= 0;
+        default:
+            return a[1] >= 0;
+        }
+    }
+
+    private void branch(Ssa.Node node) {
+        Cfg.Block b = node.block;
+        Boolean taken = decide(node);
+        int[] a = value(node, node.instr.args[0]);
+        int[] c = node.instr.args.length == 3 ? value(node, node.instr.args[1]) : a;
+        if (taken == null && a[0] != Ssa.BOTTOM && c[0] != Ssa.BOTTOM) {
+            return;
+        }
+        if ((taken == null || taken) && b.taken != null) {
+            flowWork.add(new Cfg.Block[] { b, b.taken });
+        }
+        if ((taken == null || !taken) && b.next != null) {
+            flowWork.add(new Cfg.Block[] { b, b.next });
+        }
+    }
+
+    private int rewrite(List<Instr> code) {
+        Set<Instr> dead = Collections.newSetFromMap(new IdentityHashMap<Instr, Boolean>());
+        int constants = 0, branches = 0;
+        for (Cfg.Block b : ssa.cfg.blocks()) {
+            if (!executable.contains(b)) {
+                for (Instr i : b.code) {
+                    if (i.isCode() || i.op == Opcode.COMMENT) {
+                        dead.add(i);
+                    }
+                }
+                continue;
+            }
+            for (Ssa.Node node : ssa.nodesOf(b)) {
+                Instr i = node.instr;
+                if (i.op.isBranch()) {
+                    Boolean taken = decide(node);
+                    if (taken == null) {
+                        continue;
+                    }
+                    if (taken) {
+                        i.op = Opcode.J;
+                        i.args = new Operand[] { i.args[i.args.length - 1] };
+                    }
+                    else {
+                        dead.add(i);
+                    }
+                    branches++;
+                }
+                else if (foldable(i) && node.def().isConstant()) {
+                    i.op = Opcode.LI;
+                    i.args = new Operand[] { i.args[0], new Imm(node.def().constant) };
+                    constants++;
+                }
+                else if (immediate(node, i)) {
+                    constants++;
+                }
+            }
+        }
+        int removed = 0;
+        for (Iterator<Instr> it = code.iterator(); it.hasNext(); ) {
+            Instr i = it.next();
+            if (dead.contains(i)) {
+                removed += i.isCode() ? 1 : 0;
+                it.remove();
+            }
+        }
+        CompileStats stats = CompileStats.get();
+        stats.count("sccpConstants", constants);
+        stats.count("sccpBranches", branches);
+        stats.count("sccpRemoved", removed);
+        return constants + branches + removed;
+    }
+
+    // instructions that only compute a register from their operands
+    private static boolean foldable(Instr i) {
+        switch (i.op) {
+        case LW:
+        case MOVE:
+        case ADD:
+        case ADDU:
+        case SUB:
+        case SUBU:
+        case XORI:
+        case SLL:
+        case SRA:
+        case SRL:
+            return Ssa.tracked(i.args[0]);
+        default:
+            return false;
+        }
+    }
+
+    // a constant register operand becomes $zero or, as the last operand of
+    // an add or subtract, an immediate
+    private boolean immediate(Ssa.Node node, Instr i) {
+        boolean changed = false;
+        int first = i.def() == null ? 0 : 1;
+        for (int k = first; k < i.args.length; k++) {
+            Operand a = i.args[k];
+            if (!Ssa.tracked(a) || node.use(((Reg) a).name()) == null) {
+                continue;
+            }
+            Ssa.Value v = node.use(((Reg) a).name());
+            if (!v.isConstant()) {
+                continue;
+            }
+            if (v.constant == 0) {
+                i.args[k] = Reg.ZERO;
+                changed = true;
+            }
+            else if (k == 2 && isAddSub(i.op) && v.constant >= -32768 && v.constant <= 32767) {
+                i.args[k] = new Imm(v.constant);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private static boolean isAddSub(Opcode op) {
+        return op == Opcode.ADD || op == Opcode.ADDU || op == Opcode.SUB || op == Opcode.SUBU;
+    }
+}
@@ -38,12 +38,17 @@ class FnSym extends SemSym {
     private int numParams;
     private List<Type> paramTypes;
     private int size;
+    private int localsSize;
+    private FnDeclNode decl = null;
+    private int cost = -1;
+    private boolean recursive = false;
     
     public FnSym(Type type, int numparams, int size) {
         super(new FnType(), 0);
         returnType = type;
         numParams = numparams;
         this.size = size;
+        this.localsSize = size;
     }
 
     public void addFormals(List<Type> L) {
@@ -66,6 +71,37 @@ class FnSym extends SemSym {
         return size;
     }
 
+    // frame size before inlined callees were added by growSize
+    public int getLocalsSize() {
+        return localsSize;
+    }
+
+    public void growSize(int size) {
+        this.size = Math.max(this.size, size);
+    }
+
+    public FnDeclNode getDecl() {
+        return decl;
+    }
+
+    public void setDecl(FnDeclNode decl) {
+        this.decl = decl;
+    }
+
+    // instructions emitted for the function, or -1 until it has been generated
+    public int getCost() {
+        return cost;
+    }
+
+    public boolean isRecursive() {
+        return recursive;
+    }
+
+    public void setGenerated(int cost, boolean recursive) {
+        this.cost = cost;
+        this.recursive = recursive;
+    }
+
     public String toString() {
 
         String str = "";
@@ -100,6 +136,9 @@ class StructSym extends SemSym {
     }    
 
     public int getNextOffset() {
+        if (getOffset() == 0) {
+            return 0;
+        }
         return getOffset() - size;
     }
 
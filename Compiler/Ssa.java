@@ -0,0 +1,376 @@
+import java.util.*;
+
+// SSA form over a function's CFG; the variables are the temporaries and
+// result registers plus, when no address of the frame escapes into a
+// register, each word of the frame at a fixed $fp offset, which is where
+// locals and parameters live (SemSym offsets, shifted by any inline bias)
+public class Ssa {
+    static final int TOP = 0;
+    static final int CONST = 1;
+    static final int BOTTOM = 2;
+
+    private static final String[] REGS = {
+        "$t0", "$t1", "$t2", "$t3", "$t4", "$t5", "$t6", "$t7", "$t8", "$t9",
+        "$v0", "$v1", "$a0"
+    };
+    private static final Set<String> TRACKED = new HashSet<String>(Arrays.asList(REGS));
+
+    static class Value {
+        final String var;
+        final int version;
+        final List<Object> users = new ArrayList<Object>();
+        int state = TOP;
+        int constant = 0;
+
+        Value(String var, int version) {
+            this.var = var;
+            this.version = version;
+        }
+
+        boolean isConstant() {
+            return state == CONST;
+        }
+
+        public String toString() {
+            return var + "." + version;
+        }
+    }
+
+    static class Phi {
+        final Cfg.Block block;
+        final String var;
+        final Value[] args;
+        Value result = null;
+
+        Phi(Cfg.Block block, String var) {
+            this.block = block;
+            this.var = var;
+            this.args = new Value[block.preds.size()];
+        }
+    }
+
+    static class Node {
+        final Instr instr;
+        final Cfg.Block block;
+        final Map<String, Value> uses = new LinkedHashMap<String, Value>();
+        final List<Value> defs = new ArrayList<Value>();
+
+        Node(Instr instr, Cfg.Block block) {
+            this.instr = instr;
+            this.block = block;
+        }
+
+        Value use(String var) {
+            return uses.get(var);
+        }
+
+        Value def() {
+            return defs.isEmpty() ? null : defs.get(0);
+        }
+    }
+
+    final Cfg cfg;
+    final boolean promoteSlots;
+    final Map<Cfg.Block, List<Phi>> phis = new HashMap<Cfg.Block, List<Phi>>();
+    final Map<Cfg.Block, List<Node>> nodes = new HashMap<Cfg.Block, List<Node>>();
+    final List<Value> entryValues = new ArrayList<Value>();
+
+    private final Map<String, Integer> versions = new HashMap<String, Integer>();
+    private final Map<String, Deque<Value>> stacks = new HashMap<String, Deque<Value>>();
+
+    private Ssa(Cfg cfg) {
+        this.cfg = cfg;
+        this.promoteSlots = slotsPrivate(cfg);
+    }
+
+    public static Ssa build(Cfg cfg) {
+        Ssa ssa = new Ssa(cfg);
+        ssa.placePhis();
+        ssa.rename();
+        return ssa;
+    }
+
+    // frame words are only promoted when every memory access uses a fixed
+    // offset from $fp, $sp or $gp, so no store can reach them indirectly
+    private static boolean slotsPrivate(Cfg cfg) {
+        for (Cfg.Block b : cfg.blocks()) {
+            for (Instr i : b.code) {
+                for (Operand a : i.args) {
+                    if (a instanceof Mem) {
+                        Reg base = ((Mem) a).base();
+                        if (base != Reg.FP && base != Reg.SP && base != Reg.get(Codegen.GP)) {
+                            return false;
+                        }
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    static boolean tracked(Operand a) {
+        return a instanceof Reg && TRACKED.contains(((Reg) a).name());
+    }
+
+    String slot(Operand a) {
+        if (!promoteSlots || !(a instanceof Mem) || ((Mem) a).base() != Reg.FP) {
+            return null;
+        }
+        int offset = ((Mem) a).offset();
+        return offset < 0 ? "fp" + offset : "fp+" + offset;
+    }
+
+    // variables read by i, in operand order
+    List<String> usesOf(Instr i) {
+        List<String> vars = new ArrayList<String>();
+        if (i.op == Opcode.SYSCALL) {
+            vars.add(Codegen.V0);
+            vars.add(Codegen.A0);
+            return vars;
+        }
+        if (i.op == Opcode.JAL) {
+            return vars;
+        }
+        for (int k = i.def() == null ? 0 : 1; k < i.args.length; k++) {
+            Operand a = i.args[k];
+            if (tracked(a)) {
+                vars.add(((Reg) a).name());
+            }
+            else if (a instanceof Mem && tracked(((Mem) a).base())) {
+                vars.add(((Mem) a).base().name());
+            }
+            else if (i.op == Opcode.LW && slot(a) != null) {
+                vars.add(slot(a));
+            }
+        }
+        return vars;
+    }
+
+    // variables written by i; a call clobbers every register
+    List<String> defsOf(Instr i) {
+        List<String> vars = new ArrayList<String>();
+        if (i.op == Opcode.JAL) {
+            vars.addAll(Arrays.asList(REGS));
+        }
+        else if (i.op == Opcode.SW && slot(i.args[1]) != null) {
+            vars.add(slot(i.args[1]));
+        }
+        else if (i.def() != null && tracked(i.def())) {
+            vars.add(i.def().name());
+        }
+        return vars;
+    }
+
+    private void placePhis() {
+        Map<String, Set<Cfg.Block>> sites = new LinkedHashMap<String, Set<Cfg.Block>>();
+        for (Cfg.Block b : cfg.reversePostorder()) {
+            for (Instr i : b.code) {
+                if (!i.isCode()) {
+                    continue;
+                }
+                for (String v : defsOf(i)) {
+                    if (!sites.containsKey(v)) {
+                        sites.put(v, new LinkedHashSet<Cfg.Block>());
+                    }
+                    sites.get(v).add(b);
+                }
+            }
+        }
+        Map<Cfg.Block, Set<Cfg.Block>> df = cfg.frontiers();
+        for (Map.Entry<String, Set<Cfg.Block>> e : sites.entrySet()) {
+            Set<Cfg.Block> placed = new HashSet<Cfg.Block>();
+            Deque<Cfg.Block> work = new ArrayDeque<Cfg.Block>(e.getValue());
+            while (!work.isEmpty()) {
+                for (Cfg.Block y : df.get(work.pop())) {
+                    if (placed.add(y)) {
+                        phisOf(y).add(new Phi(y, e.getKey()));
+                        if (!e.getValue().contains(y)) {
+                            work.push(y);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    List<Phi> phisOf(Cfg.Block b) {
+        List<Phi> list = phis.get(b);
+        if (list == null) {
+            list = new ArrayList<Phi>();
+            phis.put(b, list);
+        }
+        return list;
+    }
+
+    List<Node> nodesOf(Cfg.Block b) {
+        List<Node> list = nodes.get(b);
+        return list == null ? Collections.<Node>emptyList() : list;
+    }
+
+    private Value fresh(String var) {
+        Integer n = versions.get(var);
+        int version = n == null ? 0 : n;
+        versions.put(var, version + 1);
+        Value v = new Value(var, version);
+        Deque<Value> stack = stacks.get(var);
+        if (stack == null) {
+            stack = new ArrayDeque<Value>();
+            stacks.put(var, stack);
+        }
+        stack.push(v);
+        return v;
+    }
+
+    // the value reaching a use; anything never written in the function
+    // gets its entry value on first sight
+    private Value current(String var) {
+        Deque<Value> stack = stacks.get(var);
+        if (stack == null || stack.isEmpty()) {
+            Value v = fresh(var);
+            v.state = BOTTOM;
+            entryValues.add(v);
+            return v;
+        }
+        return stack.peek();
+    }
+
+    private void rename() {
+        for (String r : REGS) {
+            current(r);
+        }
+        for (List<Phi> list : phis.values()) {
+            for (Phi phi : list) {
+                current(phi.var);
+            }
+        }
+        for (Cfg.Block b : cfg.reversePostorder()) {
+            for (Instr i : b.code) {
+                if (i.isCode()) {
+                    for (String v : defsOf(i)) {
+                        current(v);
+                    }
+                }
+            }
+        }
+        rename(cfg.entry());
+    }
+
+    private void rename(Cfg.Block b) {
+        List<String> pushed = new ArrayList<String>();
+        for (Phi phi : phisOf(b)) {
+            phi.result = fresh(phi.var);
+            pushed.add(phi.var);
+        }
+        List<Node> out = new ArrayList<Node>();
+        for (Instr i : b.code) {
+            if (!i.isCode()) {
+                continue;
+            }
+            Node node = new Node(i, b);
+            for (String v : usesOf(i)) {
+                Value value = current(v);
+                node.uses.put(v, value);
+                value.users.add(node);
+            }
+            for (String v : defsOf(i)) {
+                Value value = fresh(v);
+                if (i.op == Opcode.JAL) {
+                    value.state = BOTTOM;
+                }
+                node.defs.add(value);
+                pushed.add(v);
+            }
+            out.add(node);
+        }
+        nodes.put(b, out);
+        for (Cfg.Block s : b.succs) {
+            int j = s.preds.indexOf(b);
+            for (Phi phi : phisOf(s)) {
+                Value value = current(phi.var);
+                phi.args[j] = value;
+                value.users.add(phi);
+            }
+        }
+        for (Cfg.Block c : cfg.children(b)) {
+            rename(c);
+        }
+        for (String v : pushed) {
+            stacks.get(v).pop();
+        }
+    }
+
+    // one line per phi and instruction, with the SSA names substituted and
+    // each constant result shown in braces
+    public void print(StringBuilder sb, Set<Cfg.Block> executable) {
+        sb.append("function ").append(cfg.function()).append('\n');
+        for (Cfg.Block b : cfg.blocks()) {
+            sb.append(b.name());
+            for (Instr i : b.code) {
+                if (i.op == Opcode.LABEL) {
+                    sb.append(' ').append(i.label);
+                }
+            }
+            if (!b.preds.isEmpty()) {
+                sb.append("  preds");
+                for (Cfg.Block p : b.preds) {
+                    sb.append(' ').append(p.name());
+                }
+            }
+            if (executable != null && !executable.contains(b)) {
+                sb.append("  (not executable)");
+            }
+            sb.append('\n');
+            for (Phi phi : phisOf(b)) {
+                if (phi.result.users.isEmpty()) {
+                    continue;
+                }
+                sb.append("    ").append(phi.result).append(" = phi");
+                for (int k = 0; k < phi.args.length; k++) {
+                    sb.append(k == 0 ? " " : ", ").append(phi.args[k]);
+                }
+                lattice(sb, phi.result);
+                sb.append('\n');
+            }
+            for (Node node : nodesOf(b)) {
+                sb.append("    ");
+                print(sb, node);
+                sb.append('\n');
+            }
+        }
+        sb.append('\n');
+    }
+
+    private void print(StringBuilder sb, Node node) {
+        Instr i = node.instr;
+        Value def = node.def();
+        boolean lhs = def != null && i.op != Opcode.JAL;
+        if (lhs) {
+            sb.append(def).append(" = ");
+        }
+        sb.append(i.op.text());
+        int first = lhs && i.op != Opcode.SW ? 1 : 0;
+        for (int k = first; k < i.args.length; k++) {
+            Operand a = i.args[k];
+            String text = a.toString();
+            if (tracked(a) && node.use(((Reg) a).name()) != null) {
+                text = node.use(((Reg) a).name()).toString();
+            }
+            else if (slot(a) != null) {
+                if (i.op == Opcode.SW) {
+                    continue;
+                }
+                text = node.use(slot(a)).toString();
+            }
+            sb.append(k == first ? " " : ", ").append(text);
+        }
+        if (lhs) {
+            lattice(sb, def);
+        }
+    }
+
+    private static void lattice(StringBuilder sb, Value v) {
+        if (v.isConstant()) {
+            sb.append("  {").append(v.constant).append('}');
+        }
+    }
+}
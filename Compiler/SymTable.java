@@ -2,6 +2,7 @@ import java.util.*;
 
 public class SymTable {
     private List<HashMap<String, SemSym>> list;
+    private int frameLow = 0;
     
     public SymTable() {
         list = new LinkedList<HashMap<String, SemSym>>();
@@ -21,6 +22,7 @@ public class SymTable {
             throw new DuplicateSymException();
         
         symTab.put(name, sym);
+        CompileStats.get().symbols++;
     }
 
     public void removeDecl(String name) 
@@ -35,6 +37,7 @@ public class SymTable {
     
     public void addScope() {
         list.add(0, new HashMap<String, SemSym>());
+        CompileStats.get().scopes++;
     }
     
     public SemSym lookupLocal(String name) {
@@ -57,6 +60,19 @@ public class SymTable {
         return null;
     }
     
+    // lowest local offset handed out since beginFrame, nested blocks included
+    public void beginFrame(int offset) {
+        frameLow = offset;
+    }
+    
+    public void noteOffset(int offset) {
+        frameLow = Math.min(frameLow, offset);
+    }
+    
+    public int frameLow() {
+        return frameLow;
+    }
+    
     public void removeScope() throws EmptySymTableException {
         if (list.isEmpty())
             throw new EmptySymTableException();
@@ -3,6 +3,10 @@ import java.util.*;
 
 abstract class ASTnode {
  
+    protected ASTnode() {
+        CompileStats.get().astNodes++;
+    }
+ 
     abstract public void unparse(PrintWriter p, int indent); 
  
     protected void doIndent(PrintWriter p, int indent) {
@@ -29,8 +33,25 @@ class ProgramNode extends ASTnode {
         myDeclList.typeCheck();
     } 
      
+    public void fold() {
+        myDeclList.fold();
+    } 
+     
+    public void prune() {
+        myDeclList.prune();
+    } 
+     
+    public void removeUnreachable() {
+        myDeclList.removeUnreachable();
+    } 
+     
+    public void internStrings() {
+        myDeclList.internStrings();
+    } 
+     
     public void codeGen() {
         myDeclList.codeGenGlobal();
+        Codegen.flush();
     } 
     public void unparse(PrintWriter p, int indent) {
         myDeclList.unparse(p, indent);
@@ -61,6 +82,7 @@ class DeclListNode extends ASTnode {
                 }
             }
         }
+        symTab.noteOffset(offset);
         return offset;
     } 
      
@@ -70,18 +92,93 @@ class DeclListNode extends ASTnode {
         }
     } 
      
+    public void fold() {
+        for (DeclNode node : myDecls) {
+            node.fold();
+        }
+    } 
+     
+    public void prune() {
+        for (DeclNode node : myDecls) {
+            node.prune();
+        }
+    } 
+     
+    // the call graph runs from each function to the functions and globals
+    // its body names; only what main reaches is kept, and what goes is
+    // listed at the top of the output
+    public void removeUnreachable() {
+        Map<String, Set<String>> graph = new HashMap<String, Set<String>>();
+        for (DeclNode node : myDecls) {
+            if (node instanceof FnDeclNode) {
+                Set<String> names = new HashSet<String>();
+                ((FnDeclNode)node).body().refs(names);
+                graph.put(((FnDeclNode)node).name(), names);
+            }
+        }
+        Set<String> reached = new HashSet<String>();
+        Deque<String> work = new ArrayDeque<String>();
+        work.push("main");
+        while (!work.isEmpty()) {
+            String name = work.pop();
+            if (reached.add(name) && graph.containsKey(name)) {
+                work.addAll(graph.get(name));
+            }
+        }
+        List<DeclNode> kept = new ArrayList<DeclNode>();
+        for (DeclNode node : myDecls) {
+            if (node instanceof FnDeclNode && !reached.contains(((FnDeclNode)node).name())) {
+                myRemoved.add("UNREACHABLE function " + ((FnDeclNode)node).name());
+                CompileStats.get().count("deadFunctions", 1);
+            }
+            else if (node instanceof VarDeclNode && !reached.contains(((VarDeclNode)node).name())) {
+                myRemoved.add("UNUSED global " + ((VarDeclNode)node).name());
+                CompileStats.get().count("deadGlobals", 1);
+            }
+            else {
+                kept.add(node);
+            }
+        }
+        myDecls = kept;
+    } 
+     
+    // the literals the functions' bodies use, in order of first use
+    public void internStrings() {
+        for (DeclNode node : myDecls) {
+            if (node instanceof FnDeclNode) {
+                Set<String> names = new LinkedHashSet<String>();
+                ((FnDeclNode)node).body().refs(names);
+                for (String name : names) {
+                    if (name.startsWith("\"")) {
+                        Codegen.internString(name);
+                    }
+                }
+            }
+        }
+    } 
+     
     public void codeGenGlobal() {
  
         boolean data = false;
         boolean text = false;
+        for (String removed : myRemoved) {
+            Codegen.generateWithComment("", removed);
+        }
+        Codegen.genStringPool();
+        for (DeclNode node : myDecls) {
+            if (node instanceof VarDeclNode) {
+                Codegen.beginGlobals();
+                break;
+            }
+        }
         for (DeclNode node : myDecls) {
             if (node instanceof VarDeclNode && !data) {
-                Codegen.p.println("\t.data");
+                Codegen.genDirective(Codegen.hasGlobalPointer() ? ".sdata" : ".data");
                 data = true;
                 text = false;
             } 
             if (node instanceof FnDeclNode && !text) {
-                Codegen.p.println("\t.text");
+                Codegen.genDirective(".text");
                 data = false;
                 text = true;
             } 
@@ -107,6 +204,7 @@ class DeclListNode extends ASTnode {
     } 
  
     private List<DeclNode> myDecls;
+    private List<String> myRemoved = new ArrayList<String>();
 } 
 class FormalsListNode extends ASTnode {
     public FormalsListNode(List<FormalDeclNode> S) {
@@ -163,6 +261,26 @@ class FnBodyNode extends ASTnode {
         myStmtList.typeCheck(retType);
     } 
      
+    public void fold() {
+        myStmtList.fold();
+    } 
+     
+    public void prune() {
+        myStmtList.prune();
+    } 
+     
+    public int effects() {
+        return myStmtList.effects();
+    } 
+     
+    public void refs(Set<String> names) {
+        myStmtList.refs(names);
+    } 
+     
+    public int regNeed() {
+        return myStmtList.regNeed();
+    } 
+     
     public void codeGen(String fn) {
         myDeclList.codeGen();
         myStmtList.codeGen(fn);
@@ -192,8 +310,65 @@ class StmtListNode extends ASTnode {
         }
     } 
      
+    public void fold() {
+        for (StmtNode node : myStmts) {
+            node.fold();
+        }
+    } 
+     
+    // drops statements that cannot be reached; returns whether control can
+    // fall out of the end of the list
+    public boolean prune() {
+        List<StmtNode> kept = new ArrayList<StmtNode>();
+        boolean reachable = true;
+        for (int i = 0; i < myStmts.size(); i++) {
+            StmtNode node = myStmts.get(i);
+            if (!reachable) {
+                ErrMsg.warn(node.lineNum(), node.charNum(), "Unreachable code removed");
+                CompileStats.get().count("deadStmts", myStmts.size() - i);
+                break;
+            }
+            StmtNode pruned = node.prune();
+            if (pruned == null) {
+                CompileStats.get().count("deadStmts", 1);
+                continue;
+            }
+            kept.add(pruned);
+            reachable = pruned.completes();
+        }
+        myStmts = kept;
+        return reachable;
+    } 
+     
+    public int lineNum() {
+        return myStmts.isEmpty() ? 0 : myStmts.get(0).lineNum();
+    } 
+     
+    public int effects() {
+        int effects = 0;
+        for (StmtNode node : myStmts) {
+            effects |= node.effects();
+        }
+        return effects;
+    } 
+     
+    public void refs(Set<String> names) {
+        for (StmtNode node : myStmts) {
+            node.refs(names);
+        }
+    } 
+     
+    public int regNeed() {
+        int need = 0;
+        for (StmtNode node : myStmts) {
+            need = Math.max(need, node.regNeed());
+        }
+        return need;
+    } 
+     
     public void codeGen(String fn) {
         for (StmtNode node : myStmts) {
+            Codegen.setLine(node.lineNum());
             node.codeGen(fn);
         }
     } 
@@ -240,6 +415,16 @@ class ExpListNode extends ASTnode {
         }
     } 
      
+    public ExpNode get(int i) {
+        return myExps.get(i);
+    } 
+     
+    public void fold() {
+        for (int i = 0; i < myExps.size(); i++) {
+            myExps.set(i, myExps.get(i).fold());
+        }
+    } 
+     
     public void codeGenPush() {
         for (int i = myExps.size() - 1; i >= 0; --i) {
             myExps.get(i).codeGen();
@@ -251,6 +436,27 @@ class ExpListNode extends ASTnode {
             Codegen.genPop(Codegen.T0);
         }
     } 
+     
+    public void codeGenArgs() {
+        for (int i = myExps.size() - 1; i >= 0; --i) {
+            myExps.get(i).codeGenReg(0);
+            Codegen.genPush(Codegen.T0);
+        }
+    } 
+     
+    public int effects() {
+        int effects = 0;
+        for (ExpNode node : myExps) {
+            effects |= node.effects();
+        }
+        return effects;
+    } 
+     
+    public void refs(Set<String> names) {
+        for (ExpNode node : myExps) {
+            node.refs(names);
+        }
+    } 
     public void unparse(PrintWriter p, int indent) {
         Iterator<ExpNode> it = myExps.iterator();
         if (it.hasNext()) { 
@@ -271,6 +477,9 @@ abstract class DeclNode extends ASTnode {
  
     public void typeCheck() { } 
  
+    public void fold() { }
+    public void prune() { }
+ 
     public void codeGen() { }
 } 
 class VarDeclNode extends DeclNode {
@@ -338,20 +547,30 @@ class VarDeclNode extends DeclNode {
  
         if (myId.sym().getOffset() == 0) {
             if (myId.sym().getType().isStructType()) {
+                Codegen.genGlobal(myId.name(), ((StructSym)myId.sym()).getSize());
                 Codegen.generateLabeled("." + myId.name(), ".space", "", Integer.toString(((StructSym)myId.sym()).getSize()));
             }
             else {
+                Codegen.genGlobal(myId.name(), 4);
                 Codegen.generateLabeled("." + myId.name(), ".word", "", "0");
             }
         }
  
+        else if (Codegen.useRegisters()) {
+            int offset = Codegen.frameOffset(myId.sym().getOffset());
+            Codegen.generateIndexed("sw", Codegen.ZERO, Codegen.frameReg(), offset);
+        }
         else {
             myId.codeGenAddr();
             Codegen.genPop(Codegen.T0);
             Codegen.generate("li", Codegen.T1, 0);
-            Codegen.generate("sw", Codegen.T1, "(" + Codegen.T0 + ")");
+            Codegen.generateIndirect("sw", Codegen.T1, Codegen.T0);
         }
     } 
+    public String name() {
+        return myId.name();
+    } 
+     
     public void unparse(PrintWriter p, int indent) {
         doIndent(p, indent);
         myType.unparse(p, 0);
@@ -405,7 +624,9 @@ class FnDeclNode extends DeclNode {
         if (sym != null) {
             sym.addFormals(typeList);
         } 
-        int size = - myBody.nameAnalysis(symTab, -8) - 8;  
+        symTab.beginFrame(-8);
+        myBody.nameAnalysis(symTab, -8);
+        int size = - symTab.frameLow() - 8;  
         try {
             symTab.removeScope(); 
         } catch (EmptySymTableException ex) {
@@ -427,6 +648,7 @@ class FnDeclNode extends DeclNode {
         } 
         try {
             sym = new FnSym(myType.type(), myFormalsList.length(), size);
+            sym.setDecl(this);
             if (sym != null) {
                 sym.addFormals(typeList);
             }
@@ -448,38 +670,101 @@ class FnDeclNode extends DeclNode {
         myBody.typeCheck(myType.type());
     } 
      
+    public void fold() {
+        myBody.fold();
+    } 
+     
+    public void prune() {
+        myBody.prune();
+    } 
+     
     public void codeGen() {
  
+        Codegen.beginFunction(myId.name());
+        Codegen.setLine(myId.lineNum());
         if (myId.name().equals("main")) {
-            Codegen.p.println("\t.globl main");
+            Codegen.genDirective(".globl main");
             Codegen.genLabel(myId.name(), "MAIN FUNCTION ENTRY");
             Codegen.genLabel("__start", "");
+            if (Codegen.hasGlobalPointer()) {
+                Codegen.generate("la", Codegen.GP, Codegen.GP_BASE);
+            }
             myFormalsList.codeGen();
         }
  
         else {
             Codegen.genLabel(myId.name(), "FUNCTION ENTRY");
+            if (Codegen.useRegisters() && (myBody.effects() & ExpNode.CALL) == 0) {
+                codeGenLeaf();
+                return;
+            }
         }
         Codegen.genPush(Codegen.RA);
         Codegen.genPush(Codegen.FP);
  
         Codegen.generate("addu", Codegen.FP, Codegen.SP, 8);
+        Codegen.markPrologue();
         Codegen.generate("subu", Codegen.SP, Codegen.SP, ((FnSym)myId.sym()).getSize());
+        Codegen.beginFrame(((FnSym)myId.sym()).getSize(), myFormalsList.length());
         myBody.codeGen(myId.name()); 
  
+        Codegen.setLine(myId.lineNum());
         Codegen.genLabel("_" + myId.name() + "_Exit", "FUNCTION EXIT");
         Codegen.generateIndexed("lw", Codegen.RA, Codegen.FP, 0, "");
+        Codegen.markEpilogue();
         Codegen.generateWithComment("move", "save control link", Codegen.T0, Codegen.FP);
         Codegen.generateIndexed("lw", Codegen.FP, Codegen.FP, -4, "restore FP");
         Codegen.generateWithComment("move", "restore SP", Codegen.SP, Codegen.T0);
         if (myId.name().equals("main")) {
             Codegen.generate("li", Codegen.V0, 10);
-            Codegen.p.print("\tsyscall");
+            Codegen.generateUnterminated("syscall");
         }
         else {
             Codegen.generate("jr", Codegen.RA);
         }
+        FnSym sym = (FnSym)myId.sym();
+        sym.growSize(Codegen.frameSize());
+        sym.setGenerated(Codegen.codeSize(), Codegen.hasSelfCall());
+        Codegen.endFunction();
+    } 
+    // a function that makes no calls keeps $ra where it is; if it also has
+    // no locals and never spills, it does not touch the stack at all and
+    // addresses its parameters from $sp
+    private void codeGenLeaf() {
+        int size = ((FnSym)myId.sym()).getSize();
+        boolean frameless = size == 0 && myBody.regNeed() <= Codegen.NUM_TEMPS;
+        String exit = "_" + myId.name() + "_Exit";
+        if (frameless) {
+            Codegen.beginFrameless();
+        }
+        else {
+            Codegen.generateIndexed("sw", Codegen.FP, Codegen.SP, -4, "save FP");
+            Codegen.generate("move", Codegen.FP, Codegen.SP);
+            Codegen.markPrologue();
+            Codegen.generate("subu", Codegen.SP, Codegen.SP, size + 8);
+        }
+        myBody.codeGen(myId.name()); 
+ 
+        Codegen.setLine(myId.lineNum());
+        Codegen.genLabel(exit, "FUNCTION EXIT");
+        if (!frameless) {
+            Codegen.generateWithComment("move", "restore SP", Codegen.SP, Codegen.FP);
+            Codegen.markEpilogue();
+            Codegen.generateIndexed("lw", Codegen.FP, Codegen.SP, -4, "restore FP");
+        }
+        Codegen.generate("jr", Codegen.RA);
+        ((FnSym)myId.sym()).setGenerated(Codegen.codeSize(), Codegen.hasSelfCall());
+        Codegen.endFunction();
+    } 
+     
+    public FnBodyNode body() {
+        return myBody;
+    } 
+     
+    public String name() {
+        return myId.name();
     } 
+     
     public void unparse(PrintWriter p, int indent) {
         doIndent(p, indent);
         myType.unparse(p, 0);
@@ -662,8 +947,38 @@ class StructNode extends TypeNode {
 abstract class StmtNode extends ASTnode {
     abstract public void nameAnalysis(SymTable symTab, int offset);
     abstract public void typeCheck(Type retType);
+    public void fold() { }
  
     abstract void codeGen(String fn);
+ 
+    // returns the statement to emit in place of this one, or null to drop it
+    public StmtNode prune() {
+        return this;
+    }
+    // whether control can fall through to the next statement
+    public boolean completes() {
+        return true;
+    }
+    // ExpNode.effects and the largest ExpNode.regNeed over the statement
+    public int effects() {
+        return 0;
+    }
+    // ExpNode.refs over the statement
+    public void refs(Set<String> names) { }
+    public int regNeed() {
+        return 0;
+    }
+ 
+    protected static void warnConstant(ExpNode exp) {
+        ErrMsg.warn(exp.lineNum(), exp.charNum(), "Constant condition, unreachable branch removed");
+    }
+
+    public int lineNum() {
+        return 0;
+    }
+    public int charNum() {
+        return 0;
+    }
 } 
 class AssignStmtNode extends StmtNode {
     public AssignStmtNode(AssignNode assign) {
@@ -678,9 +993,31 @@ class AssignStmtNode extends StmtNode {
         myAssign.typeCheck();
     } 
      
+    public int lineNum() {
+        return myAssign.lineNum();
+    }
+    public int charNum() {
+        return myAssign.charNum();
+    }
+     
+    public void fold() {
+        myAssign.fold();
+    } 
+     
+    public int effects() {
+        return myAssign.effects();
+    } 
+     
+    public void refs(Set<String> names) {
+        myAssign.refs(names);
+    } 
+     
+    public int regNeed() {
+        return myAssign.regNeed();
+    } 
+     
     public void codeGen(String fn) {
-        myAssign.codeGen();
-        Codegen.genPop(Codegen.T0);
+        myAssign.codeGenInto(Codegen.T0);
     } 
     public void unparse(PrintWriter p, int indent) {
         doIndent(p, indent);
@@ -707,8 +1044,33 @@ class PostIncStmtNode extends StmtNode {
         }
     } 
      
+    public int lineNum() {
+        return myExp.lineNum();
+    }
+    public int charNum() {
+        return myExp.charNum();
+    }
+     
+    public int effects() {
+        return myExp.effects();
+    } 
+     
+    public void refs(Set<String> names) {
+        myExp.refs(names);
+    } 
+     
+    public int regNeed() {
+        return myExp.regNeed();
+    } 
+     
     public void codeGen(String fn) {
         Codegen.generateWithComment("", "Post Increment");
+        if (Codegen.useRegisters()) {
+            myExp.codeGenReg(0);
+            Codegen.generate("add", Codegen.T0, Codegen.T0, 1);
+            myExp.codeGenStore(0);
+            return;
+        }
         myExp.codeGenAddr();
         myExp.codeGen();
  
@@ -717,7 +1079,7 @@ class PostIncStmtNode extends StmtNode {
         Codegen.generate("add", Codegen.T1, Codegen.T0, Codegen.T1);
  
         Codegen.genPop(Codegen.T0);
-        Codegen.generate("sw", Codegen.T1, "(" + Codegen.T0 + ")");
+        myExp.codeGenStoreAddr(Codegen.T1);
     } 
     public void unparse(PrintWriter p, int indent) {
         doIndent(p, indent);
@@ -744,8 +1106,33 @@ class PostDecStmtNode extends StmtNode {
         }
     } 
      
+    public int lineNum() {
+        return myExp.lineNum();
+    }
+    public int charNum() {
+        return myExp.charNum();
+    }
+     
+    public int effects() {
+        return myExp.effects();
+    } 
+     
+    public void refs(Set<String> names) {
+        myExp.refs(names);
+    } 
+     
+    public int regNeed() {
+        return myExp.regNeed();
+    } 
+     
     public void codeGen(String fn) {
         Codegen.generateWithComment("", "Post Decrement");
+        if (Codegen.useRegisters()) {
+            myExp.codeGenReg(0);
+            Codegen.generate("sub", Codegen.T0, Codegen.T0, 1);
+            myExp.codeGenStore(0);
+            return;
+        }
         myExp.codeGenAddr();
         myExp.codeGen();
  
@@ -754,7 +1141,7 @@ class PostDecStmtNode extends StmtNode {
         Codegen.generate("sub", Codegen.T1, Codegen.T0, Codegen.T1);
  
         Codegen.genPop(Codegen.T0);
-        Codegen.generate("sw", Codegen.T1, "(" + Codegen.T0 + ")");
+        myExp.codeGenStoreAddr(Codegen.T1);
     } 
     public void unparse(PrintWriter p, int indent) {
         doIndent(p, indent);
@@ -789,15 +1176,41 @@ class ReadStmtNode extends StmtNode {
         }
     } 
      
+    public int lineNum() {
+        return myExp.lineNum();
+    }
+    public int charNum() {
+        return myExp.charNum();
+    }
+     
+    public int effects() {
+        return myExp.effects();
+    } 
+     
+    public void refs(Set<String> names) {
+        myExp.refs(names);
+    } 
+     
+    public int regNeed() {
+        return myExp.regNeed();
+    } 
+     
     public void codeGen(String fn) {
         Codegen.generateWithComment("", "READ");
+        if (Codegen.useRegisters()) {
+            Codegen.generate("li", Codegen.V0, 5);
+            Codegen.generate("syscall");
+            Codegen.generate("move", Codegen.T0, Codegen.V0);
+            myExp.codeGenStore(0);
+            return;
+        }
         myExp.codeGenAddr();
  
         Codegen.generate("li", Codegen.V0, 5);
-        Codegen.p.print("\tsyscall\n");
+        Codegen.generate("syscall");
  
         Codegen.genPop(Codegen.T0);
-        Codegen.generate("sw", Codegen.V0, "(" + Codegen.T0 + ")");
+        myExp.codeGenStoreAddr(Codegen.V0);
     } 
     public void unparse(PrintWriter p, int indent) {
         doIndent(p, indent);
@@ -843,10 +1256,32 @@ class WriteStmtNode extends StmtNode {
         p.println(";");
     } 
      
+    public int lineNum() {
+        return myExp.lineNum();
+    }
+    public int charNum() {
+        return myExp.charNum();
+    }
+     
+    public void fold() {
+        myExp = myExp.fold();
+    } 
+     
+    public int effects() {
+        return myExp.effects();
+    } 
+     
+    public void refs(Set<String> names) {
+        myExp.refs(names);
+    } 
+     
+    public int regNeed() {
+        return myExp.regNeed();
+    } 
+     
     public void codeGen(String fn) {
         Codegen.generateWithComment("", "WRITE");
-        myExp.codeGen();
-        Codegen.genPop(Codegen.A0); 
+        myExp.codeGenInto(Codegen.A0);
  
         if (myType.isStringType()) {
             Codegen.generate("li", Codegen.V0, 4);
@@ -854,7 +1289,7 @@ class WriteStmtNode extends StmtNode {
         else {
             Codegen.generate("li", Codegen.V0, 1);
         } 
-        Codegen.p.println("\tsyscall");
+        Codegen.generate("syscall");
     } 
  
     private ExpNode myExp;
@@ -900,14 +1335,47 @@ class IfStmtNode extends StmtNode {
         p.println("}");
     } 
      
+    public int lineNum() {
+        return myExp.lineNum();
+    }
+    public int charNum() {
+        return myExp.charNum();
+    }
+     
+    public void fold() {
+        myExp = myExp.fold();
+        myStmtList.fold();
+    } 
+     
+    public StmtNode prune() {
+        if (!myExp.isConstant()) {
+            myStmtList.prune();
+            return this;
+        }
+        warnConstant(myExp);
+        if (myExp.constValue() == 0) {
+            return null;
+        }
+        return new BlockStmtNode(myDeclList, myStmtList).prune();
+    } 
+     
+    public int effects() {
+        return myExp.effects() | myStmtList.effects();
+    } 
+     
+    public void refs(Set<String> names) {
+        myExp.refs(names);
+        myStmtList.refs(names);
+    } 
+     
+    public int regNeed() {
+        return Math.max(myExp.regNeed(), myStmtList.regNeed());
+    } 
+     
     public void codeGen(String fn) {
         Codegen.generateWithComment("", "IF");
         String exit = Codegen.nextLabel();
-        myExp.codeGen();
- 
-        Codegen.genPop(Codegen.T0);
-        Codegen.generate("li", Codegen.T1, 0);
-        Codegen.generate("beq", Codegen.T0, Codegen.T1, exit);
+        myExp.codeGenJumpIfFalse(exit);
  
         myDeclList.codeGen();
         myStmtList.codeGen(fn);
@@ -964,15 +1432,56 @@ class IfElseStmtNode extends StmtNode {
         myElseStmtList.typeCheck(retType);
     } 
      
+    public int lineNum() {
+        return myExp.lineNum();
+    }
+    public int charNum() {
+        return myExp.charNum();
+    }
+     
+    public void fold() {
+        myExp = myExp.fold();
+        myThenStmtList.fold();
+        myElseStmtList.fold();
+    } 
+     
+    public StmtNode prune() {
+        if (myExp.isConstant()) {
+            warnConstant(myExp);
+            if (myExp.constValue() != 0) {
+                return new BlockStmtNode(myThenDeclList, myThenStmtList).prune();
+            }
+            return new BlockStmtNode(myElseDeclList, myElseStmtList).prune();
+        }
+        boolean thenCompletes = myThenStmtList.prune();
+        boolean elseCompletes = myElseStmtList.prune();
+        myCompletes = thenCompletes || elseCompletes;
+        return this;
+    } 
+     
+    public boolean completes() {
+        return myCompletes;
+    } 
+     
+    public int effects() {
+        return myExp.effects() | myThenStmtList.effects() | myElseStmtList.effects();
+    } 
+     
+    public void refs(Set<String> names) {
+        myExp.refs(names);
+        myThenStmtList.refs(names);
+        myElseStmtList.refs(names);
+    } 
+     
+    public int regNeed() {
+        return Math.max(myExp.regNeed(), Math.max(myThenStmtList.regNeed(), myElseStmtList.regNeed()));
+    } 
+     
     public void codeGen(String fn) {
         Codegen.generateWithComment("", "IF ELSE");
         String elseBranch = Codegen.nextLabel();
         String exit = Codegen.nextLabel();
-        myExp.codeGen();
- 
-        Codegen.genPop(Codegen.T0);
-        Codegen.generate("li", Codegen.T1, 0);
-        Codegen.generate("beq", Codegen.T0, Codegen.T1, elseBranch);
+        myExp.codeGenJumpIfFalse(elseBranch);
  
         myThenDeclList.codeGen();
         myThenStmtList.codeGen(fn);
@@ -1006,6 +1515,7 @@ class IfElseStmtNode extends StmtNode {
     private StmtListNode myThenStmtList;
     private StmtListNode myElseStmtList;
     private DeclListNode myElseDeclList;
+    private boolean myCompletes = true;
 } 
 class WhileStmtNode extends StmtNode {
     public WhileStmtNode(ExpNode exp, DeclListNode dlist, StmtListNode slist) {
@@ -1037,16 +1547,56 @@ class WhileStmtNode extends StmtNode {
         myStmtList.typeCheck(retType);
     } 
      
+    public int lineNum() {
+        return myExp.lineNum();
+    }
+    public int charNum() {
+        return myExp.charNum();
+    }
+     
+    public void fold() {
+        myExp = myExp.fold();
+        myStmtList.fold();
+    } 
+     
+    // with no break statement a while (true) loop only exits by returning
+    public StmtNode prune() {
+        if (myExp.isConstant() && myExp.constValue() == 0) {
+            warnConstant(myExp);
+            return null;
+        }
+        myStmtList.prune();
+        return this;
+    } 
+     
+    public boolean completes() {
+        return !myExp.isConstant();
+    } 
+     
+    public int effects() {
+        return myExp.effects() | myStmtList.effects();
+    } 
+     
+    public void refs(Set<String> names) {
+        myExp.refs(names);
+        myStmtList.refs(names);
+    } 
+     
+    public int regNeed() {
+        return Math.max(myExp.regNeed(), myStmtList.regNeed());
+    } 
+     
     public void codeGen(String fn) {
         Codegen.generateWithComment("", "WHILE");
+        if (CompileContext.get().options.enabled("rotate-loops")) {
+            codeGenRotated(fn);
+            return;
+        }
         String predicate = Codegen.nextLabel();
         String exit = Codegen.nextLabel();
  
         Codegen.genLabel(predicate, "WHILE predicate");
-        myExp.codeGen();
-        Codegen.genPop(Codegen.T0);
-        Codegen.generate("li", Codegen.T1, 0);
-        Codegen.generate("beq", Codegen.T0, Codegen.T1, exit);
+        myExp.codeGenJumpIfFalse(exit);
  
         myDeclList.codeGen();
         myStmtList.codeGen(fn);
@@ -1054,6 +1604,22 @@ class WhileStmtNode extends StmtNode {
  
         Codegen.genLabel(exit, "WHILE exit"); 
     } 
+    // the test is checked once on entry and then at the bottom, so each
+    // iteration takes a single backward branch
+    private void codeGenRotated(String fn) {
+        String body = Codegen.nextLabel();
+        String exit = Codegen.nextLabel();
+        myExp.codeGenJumpIfFalse(exit);
+ 
+        Codegen.genLabel(body, "WHILE body");
+        myDeclList.codeGen();
+        myStmtList.codeGen(fn);
+ 
+        Codegen.setLine(lineNum());
+        Codegen.generateWithComment("", "WHILE predicate");
+        myExp.codeGenBranch(body, null);
+        Codegen.genLabel(exit, "WHILE exit");
+    } 
     public void unparse(PrintWriter p, int indent) {
         doIndent(p, indent);
         p.print("while (");
@@ -1082,9 +1648,31 @@ class CallStmtNode extends StmtNode {
         myCall.typeCheck();
     } 
      
+    public int lineNum() {
+        return myCall.lineNum();
+    }
+    public int charNum() {
+        return myCall.charNum();
+    }
+     
+    public void fold() {
+        myCall.fold();
+    } 
+     
+    public int effects() {
+        return myCall.effects();
+    } 
+     
+    public void refs(Set<String> names) {
+        myCall.refs(names);
+    } 
+     
+    public int regNeed() {
+        return myCall.regNeed();
+    } 
+     
     public void codeGen(String fn) {
-        myCall.codeGen();
-        Codegen.genPop(Codegen.T0);
+        myCall.codeGenInto(Codegen.T0);
     } 
     public void unparse(PrintWriter p, int indent) {
         doIndent(p, indent);
@@ -1094,6 +1682,59 @@ class CallStmtNode extends StmtNode {
  
     private CallExpNode myCall;
 } 
+// the surviving branch of an if whose condition folded to a constant
+class BlockStmtNode extends StmtNode {
+    public BlockStmtNode(DeclListNode declList, StmtListNode stmtList) {
+        myDeclList = declList;
+        myStmtList = stmtList;
+    } 
+     
+    public void nameAnalysis(SymTable symTab, int offset) { } 
+     
+    public void typeCheck(Type retType) { } 
+     
+    public StmtNode prune() {
+        myCompletes = myStmtList.prune();
+        return this;
+    } 
+     
+    public boolean completes() {
+        return myCompletes;
+    } 
+     
+    public int lineNum() {
+        return myStmtList.lineNum();
+    }
+     
+    public int effects() {
+        return myStmtList.effects();
+    } 
+     
+    public void refs(Set<String> names) {
+        myStmtList.refs(names);
+    } 
+     
+    public int regNeed() {
+        return myStmtList.regNeed();
+    } 
+     
+    public void codeGen(String fn) {
+        myDeclList.codeGen();
+        myStmtList.codeGen(fn);
+    } 
+    public void unparse(PrintWriter p, int indent) {
+        doIndent(p, indent);
+        p.println("{");
+        myDeclList.unparse(p, indent + 4);
+        myStmtList.unparse(p, indent + 4);
+        doIndent(p, indent);
+        p.println("}");
+    } 
+ 
+    private DeclListNode myDeclList;
+    private StmtListNode myStmtList;
+    private boolean myCompletes = true;
+} 
 class ReturnStmtNode extends StmtNode {
     public ReturnStmtNode(ExpNode exp) {
         myExp = exp;
@@ -1124,11 +1765,52 @@ class ReturnStmtNode extends StmtNode {
         } 
     } 
      
+    public int lineNum() {
+        return myExp == null ? 0 : myExp.lineNum();
+    }
+    public int charNum() {
+        return myExp == null ? 0 : myExp.charNum();
+    }
+     
+    public void fold() {
+        if (myExp != null) {
+            myExp = myExp.fold();
+        }
+    } 
+     
+    public boolean completes() {
+        return false;
+    } 
+     
+    public int effects() {
+        return myExp == null ? 0 : myExp.effects();
+    } 
+     
+    public void refs(Set<String> names) {
+        if (myExp != null) {
+            myExp.refs(names);
+        }
+    } 
+     
+    public int regNeed() {
+        return myExp == null ? 0 : myExp.regNeed();
+    } 
+     
     public void codeGen(String fn) {
         Codegen.generateWithComment("", "RETURN");
+        if (myExp instanceof CallExpNode && ((CallExpNode)myExp).codeGenTail(fn)) {
+            return;
+        }
         if (myExp != null) {
-            myExp.codeGen();
-            Codegen.genPop(Codegen.V0);
+            myExp.codeGenInto(Codegen.V0);
+        }
+        if (Codegen.returnLabel() != null) {
+            Codegen.generate("j", Codegen.returnLabel());
+            return;
+        }
+        if (Codegen.isFrameless()) {
+            Codegen.generate("jr", Codegen.RA);
+            return;
         }
         Codegen.generate("j", "_" + fn + "_Exit");
     } 
@@ -1146,14 +1828,93 @@ class ReturnStmtNode extends StmtNode {
 } 
 
 abstract class ExpNode extends ASTnode {
+    protected static final int CALL = 1;
+    protected static final int ASSIGN = 2;
+    protected static final int GLOBAL = 4;
      
     public void nameAnalysis(SymTable symTab) { } 
     abstract public Type typeCheck();
     abstract public int lineNum();
     abstract public int charNum(); 
      
+    // returns the node to generate code for in place of this one
+    public ExpNode fold() {
+        return this;
+    }
+    public boolean isConstant() {
+        return false;
+    }
+    public int constValue() {
+        return 0;
+    }
+ 
+    protected boolean isConstant(int value) {
+        return isConstant() && constValue() == value;
+    }
+    protected boolean isPure() {
+        return (effects() & (CALL | ASSIGN)) == 0;
+    }
+    protected ExpNode folded(ExpNode node) {
+        CompileStats.get().count("folded", 1);
+        return node;
+    }
+    protected ExpNode intLit(int value) {
+        return folded(new IntLitNode(lineNum(), charNum(), value));
+    }
+    protected ExpNode boolLit(boolean value) {
+        return folded(value ? new TrueNode(lineNum(), charNum())
+                            : new FalseNode(lineNum(), charNum()));
+    }
+ 
     public void codeGen() { }
     public void codeGenAddr() { }
+    public void codeGenStoreAddr(String value) {
+        Codegen.generateIndirect("sw", value, Codegen.T0);
+    }
+ 
+    public void codeGenInto(String reg) {
+        if (Codegen.useRegisters()) {
+            codeGenReg(0);
+            if (reg != Codegen.T0) {
+                Codegen.generate("move", reg, Codegen.T0);
+            }
+        }
+        else {
+            codeGen();
+            Codegen.genPop(reg);
+        }
+    }
+ 
+    public void codeGenJumpIfFalse(String label) {
+        if (Codegen.useRegisters()) {
+            codeGenBranch(null, label);
+            return;
+        }
+        codeGen();
+        Codegen.genPop(Codegen.T0);
+        Codegen.generate("li", Codegen.T1, 0);
+        Codegen.generate("beq", Codegen.T0, Codegen.T1, label);
+    }
+ 
+    // jumps to trueLabel or falseLabel on the value of the condition; a null
+    // label means that outcome falls through to the following code
+    public void codeGenBranch(String trueLabel, String falseLabel) {
+        codeGenReg(0);
+        Codegen.genBranch("bne", "beq", Codegen.T0, Codegen.ZERO, trueLabel, falseLabel);
+    }
+ 
+    // Sethi-Ullman number: temporaries needed to evaluate without spilling
+    public int regNeed() {
+        return 1;
+    }
+    public int effects() {
+        return 0;
+    }
+    // adds the functions called, the globals read or written and the string
+    // literals used, by name
+    public void refs(Set<String> names) { }
+    public void codeGenReg(int r) { }
+    public void codeGenStore(int r) { }
 } 
 class IntLitNode extends ExpNode {
     public IntLitNode(int lineNum, int charNum, int intVal) {
@@ -1174,10 +1935,20 @@ class IntLitNode extends ExpNode {
         return new IntType();
     } 
      
+    public boolean isConstant() {
+        return true;
+    } 
+    public int constValue() {
+        return myIntVal;
+    } 
+     
     public void codeGen() {
         Codegen.generate("li", Codegen.T0, myIntVal);
         Codegen.genPush(Codegen.T0);
     } 
+    public void codeGenReg(int r) {
+        Codegen.generate("li", Codegen.temp(r), myIntVal);
+    } 
     public void unparse(PrintWriter p, int indent) {
         p.print(myIntVal);
     } 
@@ -1205,14 +1976,28 @@ class StringLitNode extends ExpNode {
     } 
      
     public void codeGen() {
- 
-        Codegen.p.println("\t.data");
+        Codegen.generate("la", Codegen.T0, label());
+        Codegen.genPush(Codegen.T0);
+    } 
+    public void codeGenReg(int r) {
+        Codegen.generate("la", Codegen.temp(r), label());
+    } 
+    // a literal is named by its quoted text, which no identifier can match
+    public void refs(Set<String> names) {
+        names.add(myStrVal);
+    } 
+    // with the strings pass, equal literals share one label in the pool;
+    // otherwise each use gets its own .asciiz in place
+    private String label() {
+        if (CompileContext.get().options.enabled("strings")) {
+            return Codegen.stringLabel(myStrVal);
+        }
+        Codegen.genDirective(".data");
         String label = Codegen.nextLabel();
         Codegen.generateLabeled(label, ".asciiz " + myStrVal, "");
  
-        Codegen.p.println("\t.text");
-        Codegen.generate("la", Codegen.T0, label);
-        Codegen.genPush(Codegen.T0);
+        Codegen.genDirective(".text");
+        return label;
     } 
     public void unparse(PrintWriter p, int indent) {
         p.print(myStrVal);
@@ -1239,10 +2024,26 @@ class TrueNode extends ExpNode {
         return new BoolType();
     } 
      
+    public boolean isConstant() {
+        return true;
+    } 
+    public int constValue() {
+        return 1;
+    } 
+     
+    public void codeGenBranch(String trueLabel, String falseLabel) {
+        if (trueLabel != null) {
+            Codegen.generate("j", trueLabel);
+        }
+    } 
+     
     public void codeGen() {
         Codegen.generate("li", Codegen.T0, 1);
         Codegen.genPush(Codegen.T0);
     } 
+    public void codeGenReg(int r) {
+        Codegen.generate("li", Codegen.temp(r), 1);
+    } 
     public void unparse(PrintWriter p, int indent) {
         p.print("true");
     } 
@@ -1267,10 +2068,26 @@ class FalseNode extends ExpNode {
         return new BoolType();
     } 
      
+    public boolean isConstant() {
+        return true;
+    } 
+    public int constValue() {
+        return 0;
+    } 
+     
+    public void codeGenBranch(String trueLabel, String falseLabel) {
+        if (falseLabel != null) {
+            Codegen.generate("j", falseLabel);
+        }
+    } 
+     
     public void codeGen() {
         Codegen.generate("li", Codegen.T0, 0);
         Codegen.genPush(Codegen.T0);
     } 
+    public void codeGenReg(int r) {
+        Codegen.generate("li", Codegen.temp(r), 0);
+    } 
     public void unparse(PrintWriter p, int indent) {
         p.print("false");
     } 
@@ -1329,16 +2146,19 @@ class IdNode extends ExpNode {
         if (!mySym.getType().isFnType()) {
             int offset = mySym.getOffset();
  
-            if (myFirst != null) {
-                Codegen.generate("la", Codegen.T1, "." + myFirst);
+            if (gpOffset() != null) {
+                Codegen.generateIndexed("lw", Codegen.T0, Codegen.GP, gpOffset());
+            }
+            else if (myFirst != null) {
+                Codegen.generateGlobal("la", Codegen.T1, myFirst);
                 Codegen.generateIndexed("lw", Codegen.T0, Codegen.T1, -mySym.getOffset());
             }
             else if (offset == 0) {
-                Codegen.generate("lw", Codegen.T0, "." + myStrVal);
+                Codegen.generateGlobal("lw", Codegen.T0, myStrVal);
             }
  
             else {
-                Codegen.generateIndexed("lw", Codegen.T0, Codegen.FP, offset + myBase);
+                Codegen.generateIndexed("lw", Codegen.T0, Codegen.frameReg(), Codegen.frameOffset(offset + myBase));
             }
             Codegen.genPush(Codegen.T0);
         }
@@ -1347,19 +2167,23 @@ class IdNode extends ExpNode {
     public void codeGenAddr() {
         int offset = mySym.getOffset();
  
-        if (myFirst != null) {
-            Codegen.generate("la", Codegen.T0, "." + myFirst);
+        if (gpOffset() != null) {
+            String name = myFirst != null ? myFirst : myStrVal;
+            Codegen.generate("addu", Codegen.T0, Codegen.GP, Codegen.gpOffset(name));
+        }
+        else if (myFirst != null) {
+            Codegen.generateGlobal("la", Codegen.T0, myFirst);
         }
         else if (offset == 0) {
-            Codegen.generate("la", Codegen.T0, "." + myStrVal);
+            Codegen.generateGlobal("la", Codegen.T0, myStrVal);
         }
  
         else {
             if (offset > 0) {
-                Codegen.generate("addu", Codegen.T0, Codegen.FP, offset + myBase);
+                Codegen.generate("addu", Codegen.T0, Codegen.frameReg(), Codegen.frameOffset(offset + myBase));
             }
             else {
-                Codegen.generate("subu", Codegen.T0, Codegen.FP, -(offset + myBase));
+                Codegen.generate("subu", Codegen.T0, Codegen.frameReg(), -(Codegen.frameOffset(offset + myBase)));
             }
         }
         Codegen.genPush(Codegen.T0);
@@ -1368,6 +2192,61 @@ class IdNode extends ExpNode {
     public void codeGenFn() {
         Codegen.generate("jal", myStrVal);
     } 
+     
+    public int effects() {
+        return myFirst != null || mySym.getOffset() == 0 ? GLOBAL : 0;
+    } 
+     
+    public void refs(Set<String> names) {
+        if (mySym.getOffset() == 0 && !mySym.getType().isFnType()) {
+            names.add(myStrVal);
+        }
+    } 
+     
+    // a global or a field of one in the $gp block
+    private Integer gpOffset() {
+        if (myFirst != null) {
+            Integer base = Codegen.gpOffset(myFirst);
+            return base == null ? null : base - mySym.getOffset();
+        }
+        return mySym.getOffset() == 0 ? Codegen.gpOffset(myStrVal) : null;
+    } 
+     
+    public void codeGenReg(int r) {
+        String reg = Codegen.temp(r);
+        int offset = mySym.getOffset();
+        if (gpOffset() != null) {
+            Codegen.generateIndexed("lw", reg, Codegen.GP, gpOffset());
+        }
+        else if (myFirst != null) {
+            Codegen.generateGlobal("la", reg, myFirst);
+            Codegen.generateIndexed("lw", reg, reg, -offset);
+        }
+        else if (offset == 0) {
+            Codegen.generateGlobal("lw", reg, myStrVal);
+        }
+        else {
+            Codegen.generateIndexed("lw", reg, Codegen.frameReg(), Codegen.frameOffset(offset + myBase));
+        }
+    } 
+     
+    public void codeGenStore(int r) {
+        String reg = Codegen.temp(r);
+        int offset = mySym.getOffset();
+        if (gpOffset() != null) {
+            Codegen.generateIndexed("sw", reg, Codegen.GP, gpOffset());
+        }
+        else if (myFirst != null) {
+            Codegen.generateGlobal("la", Codegen.V1, myFirst);
+            Codegen.generateIndexed("sw", reg, Codegen.V1, -offset);
+        }
+        else if (offset == 0) {
+            Codegen.generateGlobal("sw", reg, myStrVal);
+        }
+        else {
+            Codegen.generateIndexed("sw", reg, Codegen.frameReg(), Codegen.frameOffset(offset + myBase));
+        }
+    } 
     public void unparse(PrintWriter p, int indent) {
         p.print(myStrVal);
         if (mySym != null) {
@@ -1500,6 +2379,26 @@ class DotAccessExpNode extends ExpNode {
     public void codeGenAddr() {
         myId.codeGenAddr();
     } 
+    public void codeGenStoreAddr(String value) {
+        if (getFirst() != null) {
+            Codegen.generateIndexed("sw", value, Codegen.T0, -idOffset());
+        }
+        else {
+            super.codeGenStoreAddr(value);
+        }
+    } 
+    public int effects() {
+        return myId.effects();
+    } 
+    public void refs(Set<String> names) {
+        myLoc.refs(names);
+    } 
+    public void codeGenReg(int r) {
+        myId.codeGenReg(r);
+    } 
+    public void codeGenStore(int r) {
+        myId.codeGenStore(r);
+    } 
     public void unparse(PrintWriter p, int indent) {
         myLoc.unparse(p, 0);
         p.print(".");
@@ -1567,6 +2466,11 @@ class AssignNode extends ExpNode {
         return retType;
     } 
      
+    public ExpNode fold() {
+        myExp = myExp.fold();
+        return this;
+    } 
+     
     public void codeGen() {
         Codegen.generateWithComment("", "ASSIGN");
         myLhs.codeGenAddr();
@@ -1574,20 +2478,24 @@ class AssignNode extends ExpNode {
  
         Codegen.genPop(Codegen.T1);
         Codegen.genPop(Codegen.T0);
-        if (myLhs instanceof DotAccessExpNode) {
-            DotAccessExpNode myNode = (DotAccessExpNode) myLhs;
-            if (myNode.getFirst() != null) {
-                Codegen.generateIndexed("sw", Codegen.T1, Codegen.T0, -myNode.idOffset());
-            }
-            else {
-                Codegen.generate("sw", Codegen.T1, "(" + Codegen.T0 + ")");
-            }
-        }
-        else {
-            Codegen.generate("sw", Codegen.T1, "(" + Codegen.T0 + ")");
-        }
+        myLhs.codeGenStoreAddr(Codegen.T1);
         Codegen.genPush(Codegen.T1);
     } 
+    public int regNeed() {
+        return myExp.regNeed();
+    } 
+    public int effects() {
+        return ASSIGN | myExp.effects();
+    } 
+    public void refs(Set<String> names) {
+        myLhs.refs(names);
+        myExp.refs(names);
+    } 
+    public void codeGenReg(int r) {
+        Codegen.generateWithComment("", "ASSIGN");
+        myExp.codeGenReg(r);
+        myLhs.codeGenStore(r);
+    } 
     public void unparse(PrintWriter p, int indent) {
         if (indent != -1)  p.print("(");
         myLhs.unparse(p, 0);
@@ -1642,6 +2550,13 @@ class CallExpNode extends ExpNode {
         return fnSym.getReturnType();
     } 
      
+    public ExpNode fold() {
+        if (myExpList != null) {
+            myExpList.fold();
+        }
+        return this;
+    } 
+     
     public void codeGen() {
         if (myExpList != null) {
             myExpList.codeGenPush();
@@ -1652,6 +2567,145 @@ class CallExpNode extends ExpNode {
         }
         Codegen.genPush(Codegen.V0);
     } 
+    public int effects() {
+        return myExpList == null ? CALL : CALL | myExpList.effects();
+    } 
+    public void refs(Set<String> names) {
+        names.add(myId.name());
+        if (myExpList != null) {
+            myExpList.refs(names);
+        }
+    } 
+    // a callee that has already been generated, is small, is not recursive
+    // and is called with arguments that make no calls, so its frame can
+    // share the caller's inline area
+    private FnDeclNode inlineCallee() {
+        FnSym sym = (FnSym)myId.sym();
+        if (sym.getCost() < 0) {
+            Codegen.noteSelfCall();
+            return null;
+        }
+        if (CompileContext.get().options.inlineThreshold() == 0) {
+            return null;
+        }
+        if (!inlineable()) {
+            CompileStats.get().count("inlineSkipped", 1);
+            return null;
+        }
+        CompileStats.get().count("inlined", 1);
+        CompileStats.get().count("inlined:" + myId.name(), 1);
+        return sym.getDecl();
+    } 
+     
+    private boolean inlineable() {
+        int threshold = CompileContext.get().options.inlineThreshold();
+        FnSym sym = (FnSym)myId.sym();
+        return threshold != 0 && sym.getCost() >= 0 && !sym.isRecursive()
+            && sym.getCost() <= threshold && (myExpList.effects() & CALL) == 0;
+    } 
+     
+    // return f(...) reuses the current frame: the arguments overwrite our
+    // own parameter slots, then a self call jumps back past the prologue
+    // and any other call tears the frame down and jumps to the callee,
+    // which returns straight to our caller
+    public boolean codeGenTail(String fn) {
+        if (!CompileContext.get().options.enabled("tail-calls")
+            || fn.equals("main") || Codegen.returnLabel() != null) {
+            return false;
+        }
+        boolean self = myId.name().equals(fn);
+        if (!self && (inlineable() || myExpList.size() > Codegen.frameParams())) {
+            return false;
+        }
+        codeGenTailArgs();
+        if (self) {
+            Codegen.noteSelfCall();
+            CompileStats.get().count("tailRecursion", 1);
+            Codegen.generate("j", Codegen.tailEntry());
+            return true;
+        }
+        CompileStats.get().count("tailCalls", 1);
+        Codegen.generateIndexed("lw", Codegen.RA, Codegen.FP, 0, "");
+        Codegen.markEpilogue();
+        Codegen.generateWithComment("move", "restore SP", Codegen.SP, Codegen.FP);
+        Codegen.generateIndexed("lw", Codegen.FP, Codegen.SP, -4, "restore FP");
+        Codegen.generate("j", myId.name());
+        return true;
+    } 
+     
+    // every argument is evaluated before any parameter slot is written,
+    // in temporaries when they fit and through the stack otherwise
+    private void codeGenTailArgs() {
+        int n = myExpList.size();
+        boolean inRegs = (myExpList.effects() & CALL) == 0;
+        for (int i = 0; i < n; i++) {
+            inRegs &= n - 1 - i + myExpList.get(i).regNeed() <= Codegen.NUM_TEMPS;
+        }
+        if (!inRegs) {
+            myExpList.codeGenArgs();
+            for (int i = 0; i < n; i++) {
+                Codegen.generateIndexed("lw", Codegen.T0, Codegen.SP, 4 * (i + 1));
+                Codegen.generateIndexed("sw", Codegen.T0, Codegen.FP, 4 * (i + 1));
+            }
+            if (n > 0) {
+                Codegen.generate("addu", Codegen.SP, Codegen.SP, 4 * n);
+            }
+            return;
+        }
+        for (int i = n - 1; i >= 0; --i) {
+            myExpList.get(i).codeGenReg(n - 1 - i);
+        }
+        for (int i = 0; i < n; i++) {
+            Codegen.generateIndexed("sw", Codegen.temp(n - 1 - i), Codegen.FP, 4 * (i + 1));
+        }
+    } 
+     
+    // arguments are stored straight into the callee's parameter slots and
+    // the body is generated in place with its frame below the caller's
+    private void codeGenInline(FnDeclNode callee, int r) {
+        FnSym sym = (FnSym)myId.sym();
+        for (int k = 0; k < r; k++) {
+            Codegen.genPush(Codegen.temp(k));
+        }
+        Codegen.generateWithComment("", "INLINE " + myId.name());
+        int bias = Codegen.inlineBias(myExpList.size(), sym.getSize());
+        for (int i = myExpList.size() - 1; i >= 0; --i) {
+            myExpList.get(i).codeGenReg(0);
+            Codegen.generateIndexed("sw", Codegen.T0, Codegen.FP, bias + 4 * (i + 1));
+        }
+        Codegen.beginInline(bias, sym.getLocalsSize());
+        callee.body().codeGen(callee.name());
+        Codegen.endInline("INLINE " + myId.name() + " exit");
+        Codegen.generate("move", Codegen.temp(r), Codegen.V0);
+        for (int k = r - 1; k >= 0; k--) {
+            Codegen.genPop(Codegen.temp(k));
+        }
+    } 
+     
+    // live temporaries below r are saved around the call
+    public void codeGenReg(int r) {
+        FnDeclNode callee = inlineCallee();
+        if (callee != null) {
+            codeGenInline(callee, r);
+            return;
+        }
+        for (int k = 0; k < r; k++) {
+            Codegen.genPush(Codegen.temp(k));
+        }
+        int args = 0;
+        if (myExpList != null) {
+            myExpList.codeGenArgs();
+            args = myExpList.size();
+        }
+        myId.codeGenFn();
+        if (args > 0) {
+            Codegen.generate("addu", Codegen.SP, Codegen.SP, 4 * args);
+        }
+        Codegen.generate("move", Codegen.temp(r), Codegen.V0);
+        for (int k = r - 1; k >= 0; k--) {
+            Codegen.genPop(Codegen.temp(k));
+        }
+    } 
  
     public void unparse(PrintWriter p, int indent) {
         myId.unparse(p, 0);
@@ -1681,6 +2735,18 @@ abstract class UnaryExpNode extends ExpNode {
     public void nameAnalysis(SymTable symTab) {
         myExp.nameAnalysis(symTab);
     } 
+     
+    public int regNeed() {
+        return myExp.regNeed();
+    } 
+     
+    public int effects() {
+        return myExp.effects();
+    } 
+     
+    public void refs(Set<String> names) {
+        myExp.refs(names);
+    } 
  
     protected ExpNode myExp;
 } 
@@ -1702,6 +2768,78 @@ abstract class BinaryExpNode extends ExpNode {
         myExp1.nameAnalysis(symTab);
         myExp2.nameAnalysis(symTab);
     } 
+     
+    // folds both operands, then the node itself when both became constants
+    public ExpNode fold() {
+        myExp1 = myExp1.fold();
+        myExp2 = myExp2.fold();
+        if (myExp1.isConstant() && myExp2.isConstant()) {
+            ExpNode node = foldConstants(myExp1.constValue(), myExp2.constValue());
+            if (node != null) {
+                return node;
+            }
+        }
+        return simplify();
+    } 
+     
+    protected ExpNode foldConstants(int v1, int v2) {
+        return null;
+    } 
+     
+    protected ExpNode simplify() {
+        return this;
+    } 
+     
+    public int effects() {
+        return myExp1.effects() | myExp2.effects();
+    } 
+     
+    public void refs(Set<String> names) {
+        myExp1.refs(names);
+        myExp2.refs(names);
+    } 
+     
+    // exp2 may go first if neither side can change what the other reads
+    protected boolean reorderable() {
+        int e1 = myExp1.effects();
+        int e2 = myExp2.effects();
+        return (e1 & (CALL | ASSIGN)) == 0 && (e2 & ASSIGN) == 0
+            && ((e2 & CALL) == 0 || (e1 & GLOBAL) == 0);
+    } 
+     
+    public int regNeed() {
+        int n1 = myExp1.regNeed();
+        int n2 = myExp2.regNeed();
+        if (n1 == n2) {
+            return n1 + 1;
+        }
+        return reorderable() ? Math.max(n1, n2) : Math.max(n1, n2 + 1);
+    } 
+     
+    // evaluates both operands into temporaries from temp(r) up, the costlier
+    // one first when that is safe; exp1 goes to the stack if neither fits
+    protected String[] codeGenOperands(int r) {
+        int n1 = myExp1.regNeed();
+        int n2 = myExp2.regNeed();
+        int free = Codegen.NUM_TEMPS - r;
+        boolean call1 = (myExp1.effects() & CALL) != 0;
+        boolean call2 = (myExp2.effects() & CALL) != 0;
+        if (reorderable() && (n2 > n1 || (call2 && !call1)) && n1 < free) {
+            myExp2.codeGenReg(r);
+            myExp1.codeGenReg(r + 1);
+            return new String[] { Codegen.temp(r + 1), Codegen.temp(r) };
+        }
+        if (n2 < free) {
+            myExp1.codeGenReg(r);
+            myExp2.codeGenReg(r + 1);
+            return new String[] { Codegen.temp(r), Codegen.temp(r + 1) };
+        }
+        myExp1.codeGenReg(r);
+        Codegen.genPush(Codegen.temp(r));
+        myExp2.codeGenReg(r);
+        Codegen.genPop(Codegen.V1);
+        return new String[] { Codegen.V1, Codegen.temp(r) };
+    } 
  
     protected ExpNode myExp1;
     protected ExpNode myExp2;
@@ -1726,6 +2864,17 @@ class UnaryMinusNode extends UnaryExpNode {
         return retType;
     } 
      
+    public ExpNode fold() {
+        myExp = myExp.fold();
+        if (myExp.isConstant()) {
+            return intLit(-myExp.constValue());
+        }
+        if (myExp instanceof UnaryMinusNode) {
+            return folded(((UnaryMinusNode) myExp).myExp);
+        }
+        return this;
+    } 
+     
     public void codeGen() {
         myExp.codeGen();
         Codegen.genPop(Codegen.T0);
@@ -1733,6 +2882,10 @@ class UnaryMinusNode extends UnaryExpNode {
         Codegen.generate("sub", Codegen.T0, Codegen.T1, Codegen.T0);
         Codegen.genPush(Codegen.T0);
     } 
+    public void codeGenReg(int r) {
+        myExp.codeGenReg(r);
+        Codegen.generate("sub", Codegen.temp(r), Codegen.ZERO, Codegen.temp(r));
+    } 
     public void unparse(PrintWriter p, int indent) {
         p.print("(-");
         myExp.unparse(p, 0);
@@ -1758,6 +2911,21 @@ class NotNode extends UnaryExpNode {
         return retType;
     } 
      
+    public ExpNode fold() {
+        myExp = myExp.fold();
+        if (myExp.isConstant()) {
+            return boolLit(myExp.constValue() == 0);
+        }
+        if (myExp instanceof NotNode) {
+            return folded(((NotNode) myExp).myExp);
+        }
+        return this;
+    } 
+     
+    public void codeGenBranch(String trueLabel, String falseLabel) {
+        myExp.codeGenBranch(falseLabel, trueLabel);
+    } 
+     
     public void codeGen() {
         myExp.codeGen();
         Codegen.generate("li", Codegen.T0, 1);
@@ -1765,6 +2933,10 @@ class NotNode extends UnaryExpNode {
         Codegen.generate("subu", Codegen.T0, Codegen.T0, Codegen.T1);
         Codegen.genPush(Codegen.T0);
     } 
+    public void codeGenReg(int r) {
+        myExp.codeGenReg(r);
+        Codegen.generate("xori", Codegen.temp(r), Codegen.temp(r), 1);
+    } 
     public void unparse(PrintWriter p, int indent) {
         p.print("(!");
         myExp.unparse(p, 0);
@@ -1892,6 +3064,19 @@ class PlusNode extends ArithmeticExpNode {
         super(exp1, exp2);
     } 
      
+    protected ExpNode foldConstants(int v1, int v2) {
+        return intLit(v1 + v2);
+    } 
+    protected ExpNode simplify() {
+        if (myExp2.isConstant(0)) {
+            return folded(myExp1);
+        }
+        if (myExp1.isConstant(0)) {
+            return folded(myExp2);
+        }
+        return this;
+    } 
+     
     public void codeGen() {
         myExp1.codeGen();
         myExp2.codeGen();
@@ -1900,6 +3085,10 @@ class PlusNode extends ArithmeticExpNode {
         Codegen.generate("add", Codegen.T0, Codegen.T0, Codegen.T1);
         Codegen.genPush(Codegen.T0);
     } 
+    public void codeGenReg(int r) {
+        String[] ops = codeGenOperands(r);
+        Codegen.generate("add", Codegen.temp(r), ops[0], ops[1]);
+    } 
     public void unparse(PrintWriter p, int indent) {
         p.print("(");
         myExp1.unparse(p, 0);
@@ -1913,6 +3102,16 @@ class MinusNode extends ArithmeticExpNode {
         super(exp1, exp2);
     } 
      
+    protected ExpNode foldConstants(int v1, int v2) {
+        return intLit(v1 - v2);
+    } 
+    protected ExpNode simplify() {
+        if (myExp2.isConstant(0)) {
+            return folded(myExp1);
+        }
+        return this;
+    } 
+     
     public void codeGen() {
         myExp1.codeGen();
         myExp2.codeGen();
@@ -1921,6 +3120,10 @@ class MinusNode extends ArithmeticExpNode {
         Codegen.generate("sub", Codegen.T0, Codegen.T0, Codegen.T1);
         Codegen.genPush(Codegen.T0);
     } 
+    public void codeGenReg(int r) {
+        String[] ops = codeGenOperands(r);
+        Codegen.generate("sub", Codegen.temp(r), ops[0], ops[1]);
+    } 
     public void unparse(PrintWriter p, int indent) {
         p.print("(");
         myExp1.unparse(p, 0);
@@ -1934,6 +3137,22 @@ class TimesNode extends ArithmeticExpNode {
         super(exp1, exp2);
     } 
      
+    protected ExpNode foldConstants(int v1, int v2) {
+        return intLit(v1 * v2);
+    } 
+    protected ExpNode simplify() {
+        if (myExp2.isConstant(1)) {
+            return folded(myExp1);
+        }
+        if (myExp1.isConstant(1)) {
+            return folded(myExp2);
+        }
+        if ((myExp2.isConstant(0) && myExp1.isPure()) || (myExp1.isConstant(0) && myExp2.isPure())) {
+            return intLit(0);
+        }
+        return this;
+    } 
+     
     public void codeGen() {
         myExp1.codeGen();
         myExp2.codeGen();
@@ -1943,6 +3162,32 @@ class TimesNode extends ArithmeticExpNode {
         Codegen.generate("mflo", Codegen.T0);
         Codegen.genPush(Codegen.T0);
     } 
+    // the non-constant operand when the other is a literal that can be
+    // multiplied by with shifts and adds
+    private ExpNode shiftOperand() {
+        if (myExp2.isConstant() && Codegen.isShiftMultiplier(myExp2.constValue())) {
+            return myExp1;
+        }
+        if (myExp1.isConstant() && Codegen.isShiftMultiplier(myExp1.constValue())) {
+            return myExp2;
+        }
+        return null;
+    } 
+    public int regNeed() {
+        ExpNode exp = shiftOperand();
+        return exp == null ? super.regNeed() : exp.regNeed();
+    } 
+    public void codeGenReg(int r) {
+        ExpNode exp = shiftOperand();
+        if (exp != null) {
+            exp.codeGenReg(r);
+            Codegen.genMultiplyByConstant(Codegen.temp(r), (exp == myExp1 ? myExp2 : myExp1).constValue());
+            return;
+        }
+        String[] ops = codeGenOperands(r);
+        Codegen.generate("mult", ops[0], ops[1]);
+        Codegen.generate("mflo", Codegen.temp(r));
+    } 
     public void unparse(PrintWriter p, int indent) {
         p.print("(");
         myExp1.unparse(p, 0);
@@ -1956,6 +3201,17 @@ class DivideNode extends ArithmeticExpNode {
         super(exp1, exp2);
     } 
      
+    // division by zero is left for run time
+    protected ExpNode foldConstants(int v1, int v2) {
+        return v2 == 0 ? null : intLit(v1 / v2);
+    } 
+    protected ExpNode simplify() {
+        if (myExp2.isConstant(1)) {
+            return folded(myExp1);
+        }
+        return this;
+    } 
+     
     public void codeGen() {
         myExp1.codeGen();
         myExp2.codeGen();
@@ -1965,6 +3221,24 @@ class DivideNode extends ArithmeticExpNode {
         Codegen.generate("mflo", Codegen.T0);
         Codegen.genPush(Codegen.T0);
     } 
+    // a literal non-zero divisor becomes shifts or a multiply by its magic
+    // number; division by zero still traps at run time
+    private boolean constantDivisor() {
+        return myExp2.isConstant() && myExp2.constValue() != 0;
+    } 
+    public int regNeed() {
+        return constantDivisor() ? myExp1.regNeed() : super.regNeed();
+    } 
+    public void codeGenReg(int r) {
+        if (constantDivisor()) {
+            myExp1.codeGenReg(r);
+            Codegen.genDivideByConstant(Codegen.temp(r), myExp2.constValue());
+            return;
+        }
+        String[] ops = codeGenOperands(r);
+        Codegen.generate("div", ops[0], ops[1]);
+        Codegen.generate("mflo", Codegen.temp(r));
+    } 
     public void unparse(PrintWriter p, int indent) {
         p.print("(");
         myExp1.unparse(p, 0);
@@ -1978,6 +3252,28 @@ class AndNode extends LogicalExpNode {
         super(exp1, exp2);
     } 
      
+    protected ExpNode simplify() {
+        if (myExp1.isConstant()) {
+            return myExp1.constValue() == 0 ? boolLit(false) : folded(myExp2);
+        }
+        if (myExp2.isConstant(1)) {
+            return folded(myExp1);
+        }
+        if (myExp2.isConstant(0) && myExp1.isPure()) {
+            return boolLit(false);
+        }
+        return this;
+    } 
+     
+    public void codeGenBranch(String trueLabel, String falseLabel) {
+        String skip = falseLabel == null ? Codegen.nextLabel() : falseLabel;
+        myExp1.codeGenBranch(null, skip);
+        myExp2.codeGenBranch(trueLabel, falseLabel);
+        if (falseLabel == null) {
+            Codegen.genLabel(skip, "AND EXIT");
+        }
+    } 
+     
     public void codeGen() {
         String exit = Codegen.nextLabel();
         myExp1.codeGen();
@@ -1989,6 +3285,16 @@ class AndNode extends LogicalExpNode {
         Codegen.genLabel(exit, "AND EXIT");
         Codegen.genPush(Codegen.T0);
     } 
+    public int regNeed() {
+        return Math.max(myExp1.regNeed(), myExp2.regNeed());
+    } 
+    public void codeGenReg(int r) {
+        String exit = Codegen.nextLabel();
+        myExp1.codeGenReg(r);
+        Codegen.generate("beq", Codegen.temp(r), Codegen.ZERO, exit);
+        myExp2.codeGenReg(r);
+        Codegen.genLabel(exit, "AND EXIT");
+    } 
     public void unparse(PrintWriter p, int indent) {
         p.print("(");
         myExp1.unparse(p, 0);
@@ -2002,6 +3308,28 @@ class OrNode extends LogicalExpNode {
         super(exp1, exp2);
     } 
      
+    protected ExpNode simplify() {
+        if (myExp1.isConstant()) {
+            return myExp1.constValue() != 0 ? boolLit(true) : folded(myExp2);
+        }
+        if (myExp2.isConstant(0)) {
+            return folded(myExp1);
+        }
+        if (myExp2.isConstant(1) && myExp1.isPure()) {
+            return boolLit(true);
+        }
+        return this;
+    } 
+     
+    public void codeGenBranch(String trueLabel, String falseLabel) {
+        String skip = trueLabel == null ? Codegen.nextLabel() : trueLabel;
+        myExp1.codeGenBranch(skip, null);
+        myExp2.codeGenBranch(trueLabel, falseLabel);
+        if (trueLabel == null) {
+            Codegen.genLabel(skip, "OR EXIT");
+        }
+    } 
+     
     public void codeGen() {
         String exit = Codegen.nextLabel();
         myExp1.codeGen();
@@ -2013,6 +3341,16 @@ class OrNode extends LogicalExpNode {
         Codegen.genLabel(exit, "OR EXIT");
         Codegen.genPush(Codegen.T0);
     } 
+    public int regNeed() {
+        return Math.max(myExp1.regNeed(), myExp2.regNeed());
+    } 
+    public void codeGenReg(int r) {
+        String exit = Codegen.nextLabel();
+        myExp1.codeGenReg(r);
+        Codegen.generate("bne", Codegen.temp(r), Codegen.ZERO, exit);
+        myExp2.codeGenReg(r);
+        Codegen.genLabel(exit, "OR EXIT");
+    } 
     public void unparse(PrintWriter p, int indent) {
         p.print("(");
         myExp1.unparse(p, 0);
@@ -2026,6 +3364,15 @@ class EqualsNode extends EqualityExpNode {
         super(exp1, exp2);
     } 
      
+    protected ExpNode foldConstants(int v1, int v2) {
+        return boolLit(v1 == v2);
+    } 
+     
+    public void codeGenBranch(String trueLabel, String falseLabel) {
+        String[] ops = codeGenOperands(0);
+        Codegen.genBranch("beq", "bne", ops[0], ops[1], trueLabel, falseLabel);
+    } 
+     
     public void codeGen() {
         String branch = Codegen.nextLabel();
         String exit = Codegen.nextLabel();
@@ -2042,6 +3389,13 @@ class EqualsNode extends EqualityExpNode {
         Codegen.genLabel(exit);
         Codegen.genPush(Codegen.T0);
     } 
+    public void codeGenReg(int r) {
+        String branch = Codegen.nextLabel();
+        String exit = Codegen.nextLabel();
+        String[] ops = codeGenOperands(r);
+        Codegen.generate("beq", ops[0], ops[1], branch);
+        Codegen.genBoolean(Codegen.temp(r), branch, exit);
+    } 
     public void unparse(PrintWriter p, int indent) {
         p.print("(");
         myExp1.unparse(p, 0);
@@ -2055,6 +3409,15 @@ class NotEqualsNode extends EqualityExpNode {
         super(exp1, exp2);
     } 
      
+    protected ExpNode foldConstants(int v1, int v2) {
+        return boolLit(v1 != v2);
+    } 
+     
+    public void codeGenBranch(String trueLabel, String falseLabel) {
+        String[] ops = codeGenOperands(0);
+        Codegen.genBranch("bne", "beq", ops[0], ops[1], trueLabel, falseLabel);
+    } 
+     
     public void codeGen() {
         String branch = Codegen.nextLabel();
         String exit = Codegen.nextLabel();
@@ -2071,6 +3434,13 @@ class NotEqualsNode extends EqualityExpNode {
         Codegen.genLabel(exit);
         Codegen.genPush(Codegen.T0);
     } 
+    public void codeGenReg(int r) {
+        String branch = Codegen.nextLabel();
+        String exit = Codegen.nextLabel();
+        String[] ops = codeGenOperands(r);
+        Codegen.generate("bne", ops[0], ops[1], branch);
+        Codegen.genBoolean(Codegen.temp(r), branch, exit);
+    } 
     public void unparse(PrintWriter p, int indent) {
         p.print("(");
         myExp1.unparse(p, 0);
@@ -2084,6 +3454,16 @@ class LessNode extends RelationalExpNode {
         super(exp1, exp2);
     } 
      
+    protected ExpNode foldConstants(int v1, int v2) {
+        return boolLit(v1 < v2);
+    } 
+     
+    public void codeGenBranch(String trueLabel, String falseLabel) {
+        String[] ops = codeGenOperands(0);
+        Codegen.generate("sub", Codegen.T0, ops[0], ops[1]);
+        Codegen.genBranch("bltz", "bgez", Codegen.T0, "", trueLabel, falseLabel);
+    } 
+     
     public void codeGen() {
         String branch = Codegen.nextLabel();
         String exit = Codegen.nextLabel();
@@ -2101,6 +3481,14 @@ class LessNode extends RelationalExpNode {
         Codegen.genLabel(exit);
         Codegen.genPush(Codegen.T0);
     } 
+    public void codeGenReg(int r) {
+        String branch = Codegen.nextLabel();
+        String exit = Codegen.nextLabel();
+        String[] ops = codeGenOperands(r);
+        Codegen.generate("sub", Codegen.temp(r), ops[0], ops[1]);
+        Codegen.generate("bltz", Codegen.temp(r), branch);
+        Codegen.genBoolean(Codegen.temp(r), branch, exit);
+    } 
     public void unparse(PrintWriter p, int indent) {
         p.print("(");
         myExp1.unparse(p, 0);
@@ -2114,6 +3502,16 @@ class GreaterNode extends RelationalExpNode {
         super(exp1, exp2);
     } 
      
+    protected ExpNode foldConstants(int v1, int v2) {
+        return boolLit(v1 > v2);
+    } 
+     
+    public void codeGenBranch(String trueLabel, String falseLabel) {
+        String[] ops = codeGenOperands(0);
+        Codegen.generate("sub", Codegen.T0, ops[0], ops[1]);
+        Codegen.genBranch("bgtz", "blez", Codegen.T0, "", trueLabel, falseLabel);
+    } 
+     
     public void codeGen() {
         String branch = Codegen.nextLabel();
         String exit = Codegen.nextLabel();
@@ -2131,6 +3529,14 @@ class GreaterNode extends RelationalExpNode {
         Codegen.genLabel(exit);
         Codegen.genPush(Codegen.T0);
     } 
+    public void codeGenReg(int r) {
+        String branch = Codegen.nextLabel();
+        String exit = Codegen.nextLabel();
+        String[] ops = codeGenOperands(r);
+        Codegen.generate("sub", Codegen.temp(r), ops[0], ops[1]);
+        Codegen.generate("bgtz", Codegen.temp(r), branch);
+        Codegen.genBoolean(Codegen.temp(r), branch, exit);
+    } 
     public void unparse(PrintWriter p, int indent) {
         p.print("(");
         myExp1.unparse(p, 0);
@@ -2144,6 +3550,16 @@ class LessEqNode extends RelationalExpNode {
         super(exp1, exp2);
     } 
      
+    protected ExpNode foldConstants(int v1, int v2) {
+        return boolLit(v1 <= v2);
+    } 
+     
+    public void codeGenBranch(String trueLabel, String falseLabel) {
+        String[] ops = codeGenOperands(0);
+        Codegen.generate("sub", Codegen.T0, ops[0], ops[1]);
+        Codegen.genBranch("blez", "bgtz", Codegen.T0, "", trueLabel, falseLabel);
+    } 
+     
     public void codeGen() {
         String branch = Codegen.nextLabel();
         String exit = Codegen.nextLabel();
@@ -2161,6 +3577,14 @@ class LessEqNode extends RelationalExpNode {
         Codegen.genLabel(exit);
         Codegen.genPush(Codegen.T0);
     } 
+    public void codeGenReg(int r) {
+        String branch = Codegen.nextLabel();
+        String exit = Codegen.nextLabel();
+        String[] ops = codeGenOperands(r);
+        Codegen.generate("sub", Codegen.temp(r), ops[0], ops[1]);
+        Codegen.generate("blez", Codegen.temp(r), branch);
+        Codegen.genBoolean(Codegen.temp(r), branch, exit);
+    } 
     public void unparse(PrintWriter p, int indent) {
         p.print("(");
         myExp1.unparse(p, 0);
@@ -2174,6 +3598,16 @@ class GreaterEqNode extends RelationalExpNode {
         super(exp1, exp2);
     } 
      
+    protected ExpNode foldConstants(int v1, int v2) {
+        return boolLit(v1 >= v2);
+    } 
+     
+    public void codeGenBranch(String trueLabel, String falseLabel) {
+        String[] ops = codeGenOperands(0);
+        Codegen.generate("sub", Codegen.T0, ops[0], ops[1]);
+        Codegen.genBranch("bgez", "bltz", Codegen.T0, "", trueLabel, falseLabel);
+    } 
+     
     public void codeGen() {
         String branch = Codegen.nextLabel();
         String exit = Codegen.nextLabel();
@@ -2191,6 +3625,14 @@ class GreaterEqNode extends RelationalExpNode {
         Codegen.genLabel(exit);
         Codegen.genPush(Codegen.T0);
     } 
+    public void codeGenReg(int r) {
+        String branch = Codegen.nextLabel();
+        String exit = Codegen.nextLabel();
+        String[] ops = codeGenOperands(r);
+        Codegen.generate("sub", Codegen.temp(r), ops[0], ops[1]);
+        Codegen.generate("bgez", Codegen.temp(r), branch);
+        Codegen.genBoolean(Codegen.temp(r), branch, exit);
+    } 
     public void unparse(PrintWriter p, int indent) {
         p.print("(");
         myExp1.unparse(p, 0);
@@ -0,0 +1,54 @@
+import java.io.*;
+import java.nio.channels.*;
+
+import java_cup.runtime.*;
+
+public class BenchPrograms {
+    public static final String SMALL = "small";
+    public static final String MEDIUM = "medium";
+    public static final String LARGE = "large";
+
+    public static int functions(String size) {
+        if (size.equals(SMALL)) {
+            return 4;
+        }
+        if (size.equals(MEDIUM)) {
+            return 200;
+        }
+        if (size.equals(LARGE)) {
+            return 8000;
+        }
+        throw new IllegalArgumentException("unknown program size " + size);
+    }
+
+    public static String source(String size) {
+        ProgramGenerator gen = new ProgramGenerator();
+        gen.seed = 536;
+        gen.functions = functions(size);
+        gen.globals = Math.max(4, gen.functions / 10);
+        gen.structs = 4;
+        gen.strings = gen.functions * 2;
+        return gen.generate();
+    }
+
+    public static void quietContext() {
+        CompileContext context = CompileContext.begin(
+            new PrintStream(OutputStream.nullOutputStream()));
+        context.out = new Emitter(Channels.newChannel(OutputStream.nullOutputStream()));
+    }
+
+    public static ProgramNode parse(String src) throws Exception {
+        parser P = new parser(new Yylex(new StringReader(src)));
+        return (ProgramNode) P.parse().value;
+    }
+
+    public static ProgramNode analyzed(String src) throws Exception {
+        ProgramNode root = parse(src);
+        root.nameAnalysis();
+        root.typeCheck();
+        if (ErrMsg.getErr()) {
+            throw new IllegalStateException("benchmark program does not compile");
+        }
+        return root;
+    }
+}
@@ -0,0 +1,62 @@
+import java.io.*;
+import java.util.concurrent.*;
+
+import java_cup.runtime.*;
+
+public class BenchStage implements Callable<Object>, Runnable {
+    public static final String LEXER = "lexer";
+    public static final String PARSER = "parser";
+    public static final String NAME_ANALYSIS = "nameAnalysis";
+    public static final String TYPE_CHECK = "typeCheck";
+    public static final String CODE_GEN = "codeGen";
+
+    private String stage;
+    private String src;
+    private ProgramNode root;
+
+    public BenchStage(String stage, String size) throws Exception {
+        this.stage = stage;
+        BenchPrograms.quietContext();
+        src = BenchPrograms.source(size);
+        if (stage.equals(TYPE_CHECK) || stage.equals(CODE_GEN)) {
+            root = BenchPrograms.analyzed(src);
+        }
+    }
+
+    public void run() {
+        if (stage.equals(NAME_ANALYSIS)) {
+            try {
+                root = BenchPrograms.parse(src);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    public Object call() throws Exception {
+        if (stage.equals(LEXER)) {
+            Yylex lexer = new Yylex(new StringReader(src));
+            int count = 0;
+            while (lexer.next_token().sym != sym.EOF) {
+                count++;
+            }
+            return count;
+        }
+        if (stage.equals(PARSER)) {
+            return BenchPrograms.parse(src);
+        }
+        if (stage.equals(NAME_ANALYSIS)) {
+            root.nameAnalysis();
+        }
+        else if (stage.equals(TYPE_CHECK)) {
+            root.typeCheck();
+        }
+        else if (stage.equals(CODE_GEN)) {
+            root.codeGen();
+        }
+        else {
+            throw new IllegalArgumentException("unknown stage " + stage);
+        }
+        return root;
+    }
+}
@@ -0,0 +1,661 @@
+import java.io.*;
+import java.util.*;
+
+public class ProgramGenerator {
+    public int functions = 10;
+    public int globals = 4;
+    public int structs = 2;
+    public int structDepth = 1;
+    public int stmtsPerFunction = 12;
+    public int exprDepth = 3;
+    public int blockDepth = 2;
+    public int strings = 8;
+    public int blockLocals = 1;
+    public long seed = 1;
+    public String invalid = null;
+    public long callBudget = 20000;
+
+    public static final String[] INVALID_KINDS = {
+        "undeclared", "type", "duplicate", "args", "condition", "return", "syntax"
+    };
+
+    private static final int INT = 0;
+    private static final int BOOL = 1;
+    private static final int VOID = 2;
+    private static final int STRUCT = 3;
+
+    private static class StructDef {
+        String name;
+        List<Var> fields = new ArrayList<Var>();
+    }
+
+    private static class Var {
+        String name;
+        int kind;
+        StructDef struct;
+        boolean readOnly;
+
+        Var(String name, int kind, StructDef struct) {
+            this.name = name;
+            this.kind = kind;
+            this.struct = struct;
+        }
+    }
+
+    private static class FnDef {
+        String name;
+        int ret;
+        List<Var> params = new ArrayList<Var>();
+        long cost = 1;
+    }
+
+    private Random rnd;
+    private StringBuilder out;
+    private List<StructDef> structDefs;
+    private List<Var> globalVars;
+    private List<FnDef> fns;
+    private List<String> stringPool;
+    private int stringsLeft;
+    private LinkedList<List<Var>> scopes;
+    private FnDef currFn;
+    private int fnIndex;
+    private int nameCounter;
+    private long loopFactor;
+    private List<Var> counters;
+    private int invalidFn;
+    private boolean invalidDone;
+
+    public String generate() {
+        rnd = new Random(seed);
+        out = new StringBuilder();
+        structDefs = new ArrayList<StructDef>();
+        globalVars = new ArrayList<Var>();
+        fns = new ArrayList<FnDef>();
+        stringPool = new ArrayList<String>();
+        stringsLeft = strings;
+        nameCounter = 0;
+        invalidDone = invalid == null;
+        invalidFn = rnd.nextInt(functions + 1);
+
+        genStructs();
+        genGlobals();
+        for (fnIndex = 0; fnIndex < functions; fnIndex++) {
+            genFunction(false);
+        }
+        fnIndex = functions;
+        genFunction(true);
+        return out.toString();
+    }
+
+    private String freshName(String prefix) {
+        return prefix + (nameCounter++);
+    }
+
+    private void genStructs() {
+        for (int i = 0; i < structs; i++) {
+            StructDef def = new StructDef();
+            def.name = "S" + i;
+            int nfields = 1 + rnd.nextInt(3);
+            for (int k = 0; k < nfields; k++) {
+                String name = "m" + k;
+                if (structDepth > 0 && k > 0 && i > 0 && depthOf(structDefs.get(i - 1)) < structDepth
+                        && rnd.nextInt(3) == 0) {
+                    StructDef inner = structDefs.get(rnd.nextInt(i));
+                    if (depthOf(inner) < structDepth) {
+                        def.fields.add(new Var(name, STRUCT, inner));
+                        continue;
+                    }
+                }
+                def.fields.add(new Var(name, rnd.nextInt(4) == 0 ? BOOL : INT, null));
+            }
+            structDefs.add(def);
+            out.append("struct ").append(def.name).append(" {\n");
+            for (Var f : def.fields) {
+                out.append("    ").append(typeName(f)).append(" ").append(f.name).append(";\n");
+            }
+            out.append("};\n\n");
+        }
+    }
+
+    private int depthOf(StructDef def) {
+        int depth = 0;
+        for (Var f : def.fields) {
+            if (f.kind == STRUCT) {
+                depth = Math.max(depth, 1 + depthOf(f.struct));
+            }
+        }
+        return depth;
+    }
+
+    private void genGlobals() {
+        for (int i = 0; i < globals; i++) {
+            Var v = newVar("g" + i);
+            globalVars.add(v);
+            out.append(typeName(v)).append(" ").append(v.name).append(";\n");
+        }
+        if (globals > 0) {
+            out.append("\n");
+        }
+    }
+
+    private Var newVar(String name) {
+        int r = rnd.nextInt(6);
+        if (r == 0 && !structDefs.isEmpty()) {
+            return new Var(name, STRUCT, structDefs.get(rnd.nextInt(structDefs.size())));
+        }
+        return new Var(name, r == 1 ? BOOL : INT, null);
+    }
+
+    private static String typeName(Var v) {
+        switch (v.kind) {
+        case INT:
+            return "int";
+        case BOOL:
+            return "bool";
+        case VOID:
+            return "void";
+        default:
+            return "struct " + v.struct.name;
+        }
+    }
+
+    private static String typeName(int kind) {
+        return kind == INT ? "int" : kind == BOOL ? "bool" : "void";
+    }
+
+    private void indent(int level) {
+        for (int i = 0; i < level; i++) {
+            out.append("    ");
+        }
+    }
+
+    private void genFunction(boolean isMain) {
+        FnDef fn = new FnDef();
+        currFn = fn;
+        loopFactor = 1;
+        scopes = new LinkedList<List<Var>>();
+        scopes.add(globalVars);
+        List<Var> locals = new ArrayList<Var>();
+        scopes.addFirst(locals);
+
+        if (isMain) {
+            fn.name = "main";
+            fn.ret = INT;
+        } else {
+            fn.name = "f" + fnIndex;
+            int r = rnd.nextInt(5);
+            fn.ret = r < 3 ? INT : r == 3 ? BOOL : VOID;
+            int nparams = rnd.nextInt(4);
+            for (int i = 0; i < nparams; i++) {
+                fn.params.add(new Var("p" + i, rnd.nextInt(4) == 0 ? BOOL : INT, null));
+            }
+        }
+        locals.addAll(fn.params);
+
+        out.append(typeName(fn.ret)).append(" ").append(fn.name).append("(");
+        for (int i = 0; i < fn.params.size(); i++) {
+            Var p = fn.params.get(i);
+            out.append(i == 0 ? "" : ", ").append(typeName(p)).append(" ").append(p.name);
+        }
+        out.append(") {\n");
+
+        StringBuilder header = out;
+        out = new StringBuilder();
+        counters = new ArrayList<Var>();
+        int nlocals = 1 + rnd.nextInt(4);
+        for (int i = 0; i < nlocals; i++) {
+            Var v = newVar("v" + i);
+            locals.add(v);
+            indent(1);
+            out.append(typeName(v)).append(" ").append(v.name).append(";\n");
+        }
+        if (!invalidDone && fnIndex == invalidFn && invalid.equals("duplicate")) {
+            Var v = locals.get(locals.size() - 1);
+            indent(1);
+            out.append(typeName(v)).append(" ").append(v.name).append(";\n");
+            invalidDone = true;
+        }
+        StringBuilder decls = out;
+        out = new StringBuilder();
+        for (Var v : locals.subList(fn.params.size(), locals.size())) {
+            initialize(1, v.name, v);
+        }
+
+        for (int i = 0; i < stmtsPerFunction; i++) {
+            genStmt(1, 0);
+            if (!invalidDone && fnIndex == invalidFn && i == stmtsPerFunction / 2) {
+                genInvalid(1);
+            }
+        }
+        if (!invalidDone && fnIndex == invalidFn) {
+            genInvalid(1);
+        }
+
+        indent(1);
+        if (fn.ret == VOID) {
+            out.append("return;\n");
+        } else {
+            out.append("return ").append(expr(fn.ret, exprDepth)).append(";\n");
+        }
+        out.append("}\n\n");
+
+        for (Var c : counters) {
+            decls.append("    int ").append(c.name).append(";\n");
+        }
+        header.append(decls).append(out);
+        out = header;
+        if (!isMain) {
+            fns.add(fn);
+        }
+    }
+
+    private void genInvalid(int level) {
+        String kind = invalid.equals("any")
+            ? INVALID_KINDS[rnd.nextInt(INVALID_KINDS.length)] : invalid;
+        indent(level);
+        if (kind.equals("undeclared")) {
+            out.append("cout << ").append(freshName("undeclared")).append(";\n");
+        }
+        else if (kind.equals("type")) {
+            Var v = pickVar(INT, true);
+            if (v == null) {
+                out.append("cout << 1 + true;\n");
+            } else {
+                out.append(access(v, INT)).append(" = true;\n");
+            }
+        }
+        else if (kind.equals("duplicate")) {
+            out.append("if (true) {\n");
+            indent(level + 1);
+            out.append("int dup;\n");
+            indent(level + 1);
+            out.append("bool dup;\n");
+            indent(level);
+            out.append("}\n");
+        }
+        else if (kind.equals("args")) {
+            FnDef callee = fns.isEmpty() ? null : fns.get(rnd.nextInt(fns.size()));
+            if (callee == null) {
+                out.append("cout << 1 + true;\n");
+            } else {
+                out.append(callee.name).append("(");
+                for (int i = 0; i <= callee.params.size(); i++) {
+                    out.append(i == 0 ? "" : ", ").append("1");
+                }
+                out.append(");\n");
+            }
+        }
+        else if (kind.equals("condition")) {
+            out.append("if (1 + 2) {\n");
+            indent(level);
+            out.append("}\n");
+        }
+        else if (kind.equals("return")) {
+            out.append(currFn.ret == VOID ? "return 1;\n" : "return;\n");
+        }
+        else if (kind.equals("syntax")) {
+            out.append("cout << (1 + ;\n");
+        }
+        else {
+            throw new IllegalArgumentException("unknown invalid kind " + kind);
+        }
+        invalidDone = true;
+    }
+
+    private void genStmt(int level, int depth) {
+        int r = rnd.nextInt(20);
+        if (r < 7) {
+            genAssign(level);
+        }
+        else if (r < 9) {
+            Var v = pickVar(INT, true);
+            if (v == null) {
+                genAssign(level);
+                return;
+            }
+            indent(level);
+            out.append(access(v, INT)).append(rnd.nextBoolean() ? "++;\n" : "--;\n");
+        }
+        else if (r < 12 && depth < blockDepth) {
+            genIf(level, depth);
+        }
+        else if (r < 14 && depth < blockDepth) {
+            genWhile(level, depth);
+        }
+        else if (r < 17) {
+            genWrite(level);
+        }
+        else if (r < 19) {
+            String call = call(-1, exprDepth);
+            if (call == null) {
+                genWrite(level);
+                return;
+            }
+            indent(level);
+            out.append(call).append(";\n");
+        }
+        else {
+            if (depth > 0 && rnd.nextInt(3) == 0) {
+                indent(level);
+                if (currFn.ret == VOID) {
+                    out.append("return;\n");
+                } else {
+                    out.append("return ").append(expr(currFn.ret, exprDepth)).append(";\n");
+                }
+            } else {
+                genAssign(level);
+            }
+        }
+    }
+
+    private void genAssign(int level) {
+        int kind = rnd.nextInt(3) == 0 ? BOOL : INT;
+        Var v = pickVar(kind, true);
+        if (v == null) {
+            kind = kind == INT ? BOOL : INT;
+            v = pickVar(kind, true);
+        }
+        if (v == null) {
+            genWrite(level);
+            return;
+        }
+        indent(level);
+        out.append(access(v, kind)).append(" = ").append(expr(kind, exprDepth)).append(";\n");
+    }
+
+    private void genWrite(int level) {
+        indent(level);
+        if (stringsLeft > 0 && rnd.nextBoolean()) {
+            stringsLeft--;
+            String s;
+            if (!stringPool.isEmpty() && rnd.nextInt(3) == 0) {
+                s = stringPool.get(rnd.nextInt(stringPool.size()));
+            } else {
+                s = "\"s" + stringPool.size() + "\\n\"";
+                stringPool.add(s);
+            }
+            out.append("cout << ").append(s).append(";\n");
+        } else {
+            out.append("cout << ").append(expr(rnd.nextInt(4) == 0 ? BOOL : INT, exprDepth)).append(";\n");
+        }
+    }
+
+    private List<Var> openBlock(int level) {
+        List<Var> block = new ArrayList<Var>();
+        scopes.addFirst(block);
+        int n = blockLocals > 0 ? rnd.nextInt(blockLocals + 1) : 0;
+        for (int i = 0; i < n; i++) {
+            Var v = newVar(freshName("b"));
+            block.add(v);
+            indent(level);
+            out.append(typeName(v)).append(" ").append(v.name).append(";\n");
+        }
+        for (Var v : block) {
+            initialize(level, v.name, v);
+        }
+        return block;
+    }
+
+    private void initialize(int level, String path, Var v) {
+        if (v.kind == STRUCT) {
+            for (Var f : v.struct.fields) {
+                initialize(level, path + "." + f.name, f);
+            }
+            return;
+        }
+        indent(level);
+        out.append(path).append(" = ");
+        out.append(v.kind == BOOL ? (rnd.nextBoolean() ? "true" : "false") : Integer.toString(rnd.nextInt(20)));
+        out.append(";\n");
+    }
+
+    private void closeBlock() {
+        scopes.removeFirst();
+    }
+
+    private void genBody(int level, int depth) {
+        openBlock(level);
+        int n = 1 + rnd.nextInt(Math.max(1, stmtsPerFunction / 3));
+        for (int i = 0; i < n; i++) {
+            genStmt(level, depth);
+        }
+        closeBlock();
+    }
+
+    private void genIf(int level, int depth) {
+        indent(level);
+        out.append("if (").append(expr(BOOL, exprDepth)).append(") {\n");
+        genBody(level + 1, depth + 1);
+        indent(level);
+        if (rnd.nextBoolean()) {
+            out.append("} else {\n");
+            genBody(level + 1, depth + 1);
+            indent(level);
+        }
+        out.append("}\n");
+    }
+
+    private void genWhile(int level, int depth) {
+        Var counter = new Var(freshName("i"), INT, null);
+        counter.readOnly = true;
+        int trips = 1 + rnd.nextInt(4);
+        counters.add(counter);
+        scopes.getFirst().add(counter);
+
+        indent(level);
+        out.append(counter.name).append(" = 0;\n");
+        indent(level);
+        out.append("while (").append(counter.name).append(" < ").append(trips);
+        if (rnd.nextBoolean()) {
+            out.append(" && ").append(expr(BOOL, exprDepth - 1));
+        }
+        out.append(") {\n");
+        long saved = loopFactor;
+        loopFactor *= trips;
+        genBody(level + 1, depth + 1);
+        loopFactor = saved;
+        indent(level + 1);
+        out.append(counter.name).append("++;\n");
+        indent(level);
+        out.append("}\n");
+        scopes.getFirst().remove(counter);
+    }
+
+    private Var pickVar(int kind, boolean forWrite) {
+        List<Var> candidates = new ArrayList<Var>();
+        for (List<Var> scope : scopes) {
+            for (Var v : scope) {
+                if (forWrite && v.readOnly) {
+                    continue;
+                }
+                if (v.kind == kind || (v.kind == STRUCT && hasField(v.struct, kind))) {
+                    if (!shadowed(v)) {
+                        candidates.add(v);
+                    }
+                }
+            }
+        }
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        return candidates.get(rnd.nextInt(candidates.size()));
+    }
+
+    private boolean shadowed(Var v) {
+        for (List<Var> scope : scopes) {
+            for (Var w : scope) {
+                if (w.name.equals(v.name)) {
+                    return w != v;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasField(StructDef def, int kind) {
+        for (Var f : def.fields) {
+            if (f.kind == kind || (f.kind == STRUCT && hasField(f.struct, kind))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String access(Var v, int kind) {
+        if (v.kind != STRUCT) {
+            return v.name;
+        }
+        StringBuilder sb = new StringBuilder(v.name);
+        StructDef def = v.struct;
+        while (true) {
+            List<Var> fields = new ArrayList<Var>();
+            for (Var f : def.fields) {
+                if (f.kind == kind || (f.kind == STRUCT && hasField(f.struct, kind))) {
+                    fields.add(f);
+                }
+            }
+            Var f = fields.get(rnd.nextInt(fields.size()));
+            sb.append(".").append(f.name);
+            if (f.kind != STRUCT) {
+                return sb.toString();
+            }
+            def = f.struct;
+        }
+    }
+
+    private String call(int kind, int depth) {
+        List<FnDef> candidates = new ArrayList<FnDef>();
+        for (FnDef f : fns) {
+            if ((kind < 0 || f.ret == kind)
+                    && currFn.cost + f.cost * loopFactor <= callBudget) {
+                candidates.add(f);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        FnDef callee = candidates.get(rnd.nextInt(candidates.size()));
+        currFn.cost += callee.cost * loopFactor;
+        StringBuilder sb = new StringBuilder(callee.name).append("(");
+        for (int i = 0; i < callee.params.size(); i++) {
+            sb.append(i == 0 ? "" : ", ").append(expr(callee.params.get(i).kind, depth - 1));
+        }
+        return sb.append(")").toString();
+    }
+
+    private String expr(int kind, int depth) {
+        currFn.cost += loopFactor;
+        if (depth <= 0 || rnd.nextInt(4) == 0) {
+            return leaf(kind);
+        }
+        if (rnd.nextInt(10) == 0) {
+            String c = call(kind, depth);
+            if (c != null) {
+                return c;
+            }
+        }
+        if (kind == INT) {
+            switch (rnd.nextInt(6)) {
+            case 0:
+                return "(" + expr(INT, depth - 1) + " + " + expr(INT, depth - 1) + ")";
+            case 1:
+                return "(" + expr(INT, depth - 1) + " - " + expr(INT, depth - 1) + ")";
+            case 2:
+                return "(" + expr(INT, depth - 1) + " * " + expr(INT, depth - 1) + ")";
+            case 3:
+                return "(" + expr(INT, depth - 1) + " / " + divisor(depth - 1) + ")";
+            case 4:
+                return "(-" + expr(INT, depth - 1) + ")";
+            default:
+                return leaf(INT);
+            }
+        }
+        switch (rnd.nextInt(7)) {
+        case 0:
+            return "(" + expr(BOOL, depth - 1) + " && " + expr(BOOL, depth - 1) + ")";
+        case 1:
+            return "(" + expr(BOOL, depth - 1) + " || " + expr(BOOL, depth - 1) + ")";
+        case 2:
+            return "(!" + expr(BOOL, depth - 1) + ")";
+        case 3:
+            String[] rel = { " < ", " > ", " <= ", " >= " };
+            return "(" + expr(INT, depth - 1) + rel[rnd.nextInt(4)] + expr(INT, depth - 1) + ")";
+        case 4:
+            int k = rnd.nextInt(3) == 0 ? BOOL : INT;
+            return "(" + expr(k, depth - 1) + (rnd.nextBoolean() ? " == " : " != ")
+                + expr(k, depth - 1) + ")";
+        default:
+            return leaf(BOOL);
+        }
+    }
+
+    private String divisor(int depth) {
+        if (rnd.nextBoolean()) {
+            int d = 2 + rnd.nextInt(15);
+            return rnd.nextInt(4) == 0 ? "(-" + d + ")" : Integer.toString(d);
+        }
+        String x = expr(INT, Math.min(depth, 1));
+        return "(" + x + " * " + x + " + 1)";
+    }
+
+    private String leaf(int kind) {
+        if (rnd.nextInt(3) != 0) {
+            Var v = pickVar(kind, false);
+            if (v != null) {
+                return access(v, kind);
+            }
+        }
+        if (kind == INT) {
+            return Integer.toString(rnd.nextInt(100));
+        }
+        return rnd.nextBoolean() ? "true" : "false";
+    }
+
+    public static void main(String[] args) throws IOException {
+        ProgramGenerator gen = new ProgramGenerator();
+        String outfile = null;
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            String key = eq < 0 ? arg : arg.substring(0, eq);
+            String value = eq < 0 ? null : arg.substring(eq + 1);
+            if (key.equals("--seed")) {
+                gen.seed = Long.parseLong(value);
+            } else if (key.equals("--functions")) {
+                gen.functions = Integer.parseInt(value);
+            } else if (key.equals("--globals")) {
+                gen.globals = Integer.parseInt(value);
+            } else if (key.equals("--structs")) {
+                gen.structs = Integer.parseInt(value);
+            } else if (key.equals("--struct-depth")) {
+                gen.structDepth = Integer.parseInt(value);
+            } else if (key.equals("--stmts")) {
+                gen.stmtsPerFunction = Integer.parseInt(value);
+            } else if (key.equals("--expr-depth")) {
+                gen.exprDepth = Integer.parseInt(value);
+            } else if (key.equals("--block-depth")) {
+                gen.blockDepth = Integer.parseInt(value);
+            } else if (key.equals("--strings")) {
+                gen.strings = Integer.parseInt(value);
+            } else if (key.equals("--block-locals")) {
+                gen.blockLocals = Integer.parseInt(value);
+            } else if (key.equals("--call-budget")) {
+                gen.callBudget = Long.parseLong(value);
+            } else if (key.equals("--invalid")) {
+                gen.invalid = value == null ? "any" : value;
+            } else if (key.equals("--out")) {
+                outfile = value;
+            } else {
+                System.err.println("unknown option " + arg);
+                System.exit(-1);
+            }
+        }
+        String program = gen.generate();
+        if (outfile == null) {
+            System.out.print(program);
+        } else {
+            Writer w = new FileWriter(outfile);
+            w.write(program);
+            w.close();
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package cflatbench;
+
+import org.openjdk.jmh.annotations.*;
+
+public class CodeGenBench extends StageBench {
+    protected String stageName() {
+        return "codeGen";
+    }
+
+    @Benchmark
+    public Object codeGen() throws Exception {
+        return stage.call();
+    }
+}
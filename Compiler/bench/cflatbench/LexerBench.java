@@ -0,0 +1,14 @@
+package cflatbench;
+
+import org.openjdk.jmh.annotations.*;
+
+public class LexerBench extends StageBench {
+    protected String stageName() {
+        return "lexer";
+    }
+
+    @Benchmark
+    public Object tokens() throws Exception {
+        return stage.call();
+    }
+}
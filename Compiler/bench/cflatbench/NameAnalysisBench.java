@@ -0,0 +1,19 @@
+package cflatbench;
+
+import org.openjdk.jmh.annotations.*;
+
+public class NameAnalysisBench extends StageBench {
+    protected String stageName() {
+        return "nameAnalysis";
+    }
+
+    @Setup(Level.Invocation)
+    public void reparse() {
+        prepare.run();
+    }
+
+    @Benchmark
+    public Object nameAnalysis() throws Exception {
+        return stage.call();
+    }
+}
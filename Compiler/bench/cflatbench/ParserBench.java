@@ -0,0 +1,14 @@
+package cflatbench;
+
+import org.openjdk.jmh.annotations.*;
+
+public class ParserBench extends StageBench {
+    protected String stageName() {
+        return "parser";
+    }
+
+    @Benchmark
+    public Object parse() throws Exception {
+        return stage.call();
+    }
+}
@@ -0,0 +1,31 @@
+package cflatbench;
+
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public abstract class StageBench {
+    @Param({"small", "medium", "large"})
+    public String size;
+
+    protected Callable<Object> stage;
+    protected Runnable prepare;
+
+    protected abstract String stageName();
+
+    @SuppressWarnings("unchecked")
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        Object s = Class.forName("BenchStage")
+                        .getConstructor(String.class, String.class)
+                        .newInstance(stageName(), size);
+        stage = (Callable<Object>) s;
+        prepare = (Runnable) s;
+    }
+}
@@ -0,0 +1,14 @@
+package cflatbench;
+
+import org.openjdk.jmh.annotations.*;
+
+public class TypeCheckBench extends StageBench {
+    protected String stageName() {
+        return "typeCheck";
+    }
+
+    @Benchmark
+    public Object typeCheck() throws Exception {
+        return stage.call();
+    }
+}